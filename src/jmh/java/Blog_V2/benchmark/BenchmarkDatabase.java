@@ -0,0 +1,49 @@
+package Blog_V2.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// H2 в памяти со схемой приложения и posts постами: у каждого 2 тега (tag0..tag49 и common) и 2 комментария
+class BenchmarkDatabase implements AutoCloseable {
+
+    static final int TAGS = 50;
+
+    private final JdbcConnectionPool dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    BenchmarkDatabase(String name, int posts) {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setMaxConnections(64);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration", "classpath:Blog_V2/migration")
+                .load()
+                .migrate();
+        // Заполняем на стороне базы: миллион постов через JDBC-батчи грузился бы минутами
+        jdbcTemplate.update("INSERT INTO posts (title, text, text_preview, likes_count) "
+                + "SELECT 'Post ' || X, REPEAT('Line of post text ' || X || CHAR(10), 20), "
+                + "SUBSTRING(REPEAT('Line of post text ' || X || CHAR(10), 20), 1, 100) || '...', MOD(X, 1000) "
+                + "FROM SYSTEM_RANGE(1, ?)", posts);
+        jdbcTemplate.update("INSERT INTO tags (post_id, tag) SELECT id, 'tag' || MOD(id, ?) FROM posts", TAGS);
+        jdbcTemplate.update("INSERT INTO tags (post_id, tag) SELECT id, 'common' FROM posts");
+        jdbcTemplate.update("INSERT INTO comments (post_id, text) "
+                + "SELECT p.id, 'Comment ' || c.X || ' on post ' || p.id FROM posts p, SYSTEM_RANGE(1, 2) c");
+    }
+
+    JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    int maxPostId() {
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM posts", Integer.class);
+    }
+
+    @Override
+    public void close() {
+        jdbcTemplate.execute("SHUTDOWN");
+        dataSource.dispose();
+    }
+}
@@ -0,0 +1,71 @@
+package Blog_V2.benchmark;
+
+import Blog_V2.repository.JdbcImageRefRepository;
+import Blog_V2.repository.JdbcPostRepository;
+import Blog_V2.service.ContentVersions;
+import Blog_V2.service.LikeBuffer;
+import Blog_V2.service.PostService;
+import Blog_V2.storage.ImageResizer;
+import Blog_V2.storage.LocalImageStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// PostService.updateLikes из 8 потоков: hotPosts=1 - все лайкают один пост, 100 - нагрузка размазана
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class LikeBenchmark {
+
+    @Param({"1", "100"})
+    public int hotPosts;
+
+    @Param({"false", "true"})
+    public boolean buffered;
+
+    private BenchmarkDatabase database;
+    private LikeBuffer likeBuffer;
+    private ImageResizer imageResizer;
+    private PostService postService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new BenchmarkDatabase("likes-" + hotPosts + "-" + buffered, 1000);
+        JdbcPostRepository repository = new JdbcPostRepository(database.jdbcTemplate());
+        likeBuffer = new LikeBuffer(repository, buffered, 1000);
+        imageResizer = new ImageResizer(1, 1, 50_000_000);
+        LocalImageStorage imageStorage = new LocalImageStorage(
+                Files.createTempDirectory("like-benchmark").toString(), DataSize.ofMegabytes(10),
+                new JdbcImageRefRepository(database.jdbcTemplate()), imageResizer);
+        postService = new PostService(repository, likeBuffer, imageStorage, new ContentVersions(), new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        likeBuffer.flush();
+        imageResizer.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public void updateLikes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        postService.updateLikes(random.nextInt(1, hotPosts + 1), random.nextBoolean());
+    }
+}
@@ -0,0 +1,155 @@
+package Blog_V2.benchmark;
+
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.repository.JdbcPostRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// JdbcPostRepository без кеша поверх заполненной базы
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int posts;
+
+    private BenchmarkDatabase database;
+    private JdbcPostRepository repository;
+    private JdbcPostRepository parallelRepository;
+    private int maxId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("repository-" + posts, posts);
+        repository = new JdbcPostRepository(database.jdbcTemplate());
+        parallelRepository = new JdbcPostRepository(database.jdbcTemplate(), true);
+        maxId = database.maxPostId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<PostSummary> getPostsFirstPage(FeedPage page) {
+        return repository.getPosts("", page.pageSize, 1);
+    }
+
+    // Как лента грузилась раньше: строки постов целиком с text, затем теги и комментарии страницы.
+    // С -prof gc видно, сколько лишнего выделяется на страницу по сравнению с getPostsFirstPage
+    @Benchmark
+    public List<Post> getPostsFirstPageFullPosts(FeedPage page) {
+        JdbcTemplate jdbcTemplate = database.jdbcTemplate();
+        List<Post> posts = jdbcTemplate.query("SELECT * FROM posts ORDER BY id DESC LIMIT ?", (rs, rowNum) -> {
+            Post post = new Post();
+            post.setId(rs.getInt("id"));
+            post.setTitle(rs.getString("title"));
+            post.setText(rs.getString("text"));
+            post.setImagePath(rs.getString("image_path"));
+            post.setLikesCount(rs.getInt("likes_count"));
+            post.setTags(new ArrayList<>());
+            post.setComments(new ArrayList<>());
+            return post;
+        }, page.pageSize);
+        Map<Integer, Post> postsById = new HashMap<>();
+        posts.forEach(post -> postsById.put(post.getId(), post));
+        String placeholders = String.join(", ", Collections.nCopies(posts.size(), "?"));
+        Object[] ids = postsById.keySet().toArray();
+        jdbcTemplate.query("SELECT post_id, tag FROM tags WHERE post_id IN (" + placeholders + ")",
+                (RowCallbackHandler) rs -> postsById.get(rs.getInt("post_id")).getTags().add(rs.getString("tag")), ids);
+        jdbcTemplate.query("SELECT id, post_id, text FROM comments WHERE post_id IN (" + placeholders + ") ORDER BY id",
+                (RowCallbackHandler) rs -> postsById.get(rs.getInt("post_id")).getComments()
+                        .add(new Comment(rs.getInt("id"), rs.getString("text"))), ids);
+        return posts;
+    }
+
+    @Benchmark
+    public List<PostSummary> getPostsByTag() {
+        return repository.getPosts("tag" + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.TAGS), 10, 1);
+    }
+
+    // Базовая линия для getPostsByTag: тот же запрос без idx_tags_tag_post_id, H2 просматривает всю tags
+    @Benchmark
+    public List<PostSummary> getPostsByTagTableScan(NoTagIndex noTagIndex) {
+        return getPostsByTag();
+    }
+
+    @Benchmark
+    public List<PostSummary> getPostsBeforeMiddle() {
+        return repository.getPostsBefore("", maxId / 2, 10);
+    }
+
+    @Benchmark
+    public Optional<Post> findById() {
+        return repository.findById(randomId());
+    }
+
+    // H2 в памяти отвечает за микросекунды, так что здесь видна в основном цена потоков;
+    // выигрыш появляется, когда до базы есть сеть
+    @Benchmark
+    public Optional<Post> findByIdParallel() {
+        return parallelRepository.findById(randomId());
+    }
+
+    // Правка заголовка загруженного поста: один UPDATE строки, теги и комментарии не трогаются
+    @Benchmark
+    public Post saveEditedTitle(EditState state) {
+        state.post.setTitle("Edited " + state.edits++);
+        repository.save(state.post);
+        return state.post;
+    }
+
+    int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, maxId + 1);
+    }
+
+    // Длина страницы только для бенчмарков ленты, остальные по ней не размножаются
+    @State(Scope.Benchmark)
+    public static class FeedPage {
+        @Param({"10", "100"})
+        public int pageSize;
+    }
+
+    // Индекс удаляется один раз на прогон; база и так пересоздаётся с нуля в следующем прогоне
+    @State(Scope.Benchmark)
+    public static class NoTagIndex {
+        @Setup(Level.Trial)
+        public void setUp(PostRepositoryBenchmark benchmark) {
+            benchmark.database.jdbcTemplate().execute("DROP INDEX idx_tags_tag_post_id");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EditState {
+        private Post post;
+        private long edits;
+
+        @Setup(Level.Iteration)
+        public void setUp(PostRepositoryBenchmark benchmark) {
+            post = benchmark.repository.findById(benchmark.randomId()).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package Blog_V2.benchmark;
+
+import Blog_V2.model.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Разбиение текста поста на абзацы для post.html
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PostTextBenchmark {
+
+    @Param({"10", "1000"})
+    public int lines;
+
+    // Два разных текста одной длины: setText с тем же текстом ничего не сбрасывает
+    private final String[] texts = new String[2];
+    private int next;
+    private Post post;
+    private Post cachedPost;
+
+    @Setup
+    public void setUp() {
+        for (int t = 0; t < texts.length; t++) {
+            // Отличаются первым символом: сравнение в setText не проходит весь текст
+            StringBuilder builder = new StringBuilder().append(t).append(' ');
+            for (int i = 0; i < lines; i++) {
+                builder.append("Line ").append(i).append(" of a fairly ordinary blog post paragraph\n");
+            }
+            texts[t] = builder.toString();
+        }
+        post = new Post();
+        cachedPost = new Post();
+        cachedPost.setText(texts[0]);
+        cachedPost.getTextParts();
+    }
+
+    // Текст каждый раз другой, поэтому каждый вызов разбивает его заново
+    @Benchmark
+    public List<String> getTextParts() {
+        next ^= 1;
+        post.setText(texts[next]);
+        return post.getTextParts();
+    }
+
+    @Benchmark
+    public List<String> getTextPartsCached() {
+        return cachedPost.getTextParts();
+    }
+}
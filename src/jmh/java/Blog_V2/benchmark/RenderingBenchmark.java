@@ -0,0 +1,85 @@
+package Blog_V2.benchmark;
+
+import Blog_V2.model.Paging;
+import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Рендеринг posts.html с настройками шаблонов как у Spring Boot (classpath:/templates/, кеш включён)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderingBenchmark {
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private SpringTemplateEngine engine;
+    private Context context;
+
+    @Setup
+    public void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(true);
+
+        engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        // Вне запроса нет context path, а ссылки в шаблоне от корня: /posts/images/...
+        engine.setLinkBuilder(new StandardLinkBuilder() {
+            @Override
+            protected String computeContextPath(IExpressionContext context, String base, Map<String, Object> parameters) {
+                return "";
+            }
+        });
+
+        List<PostSummary> posts = new ArrayList<>();
+        for (int id = pageSize; id >= 1; id--) {
+            PostSummary post = new PostSummary();
+            post.setId(id);
+            post.setTitle("Post " + id);
+            post.setTextPreview(Post.preview("Line of post text ".repeat(10)));
+            post.setImagePath(id % 2 == 0 ? "/images/ab/cd/" + "0".repeat(64) + ".jpg" : null);
+            post.setLikesCount(id * 3);
+            post.setTags(new ArrayList<>(Arrays.asList("tag" + id % 50, "common")));
+            post.setCommentsCount(id % 7);
+            posts.add(post);
+        }
+        Paging paging = new Paging();
+        paging.setPageNumber(1);
+        paging.setPageSize(pageSize);
+        paging.setHasNext(true);
+
+        context = new Context();
+        context.setVariable("posts", posts);
+        context.setVariable("search", "");
+        context.setVariable("paging", paging);
+    }
+
+    @Benchmark
+    public String renderPosts() {
+        return engine.process("posts", context);
+    }
+}
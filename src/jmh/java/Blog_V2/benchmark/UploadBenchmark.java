@@ -0,0 +1,93 @@
+package Blog_V2.benchmark;
+
+import Blog_V2.repository.JdbcImageRefRepository;
+import Blog_V2.storage.ImageResizer;
+import Blog_V2.storage.LocalImageStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// LocalImageStorage.store: 10 параллельных загрузок по 10 МБ. Один проход по потоку - формат, лимит и SHA-256
+// по ходу записи во временный файл. МБ/с = ops/s * 10. Уменьшенные копии не строятся, чтобы мерить только загрузку
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(10)
+public class UploadBenchmark {
+
+    static final int PAYLOAD_SIZE = 10 * 1024 * 1024;
+
+    private BenchmarkDatabase database;
+    private ImageResizer imageResizer;
+    private Path root;
+    private LocalImageStorage imageStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new BenchmarkDatabase("uploads", 0);
+        imageResizer = new ImageResizer(1, 1, 50_000_000) {
+            @Override
+            public CompletableFuture<Void> createVariants(Path original) {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        root = Files.createTempDirectory("upload-benchmark");
+        imageStorage = new LocalImageStorage(root.toString(), DataSize.ofMegabytes(10),
+                new JdbcImageRefRepository(database.jdbcTemplate()), imageResizer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        imageResizer.shutdown();
+        database.close();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    // Каждая загрузка уникальна: иначе одинаковый хеш пропускал бы запись файла на место
+    @State(Scope.Thread)
+    public static class Payload {
+        private static final int COUNTER_OFFSET = 16;
+
+        private final byte[] content = new byte[PAYLOAD_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(content);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Случайное содержимое у каждого потока, так что потоки между собой не совпадают
+            ThreadLocalRandom.current().nextBytes(content);
+            byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+            System.arraycopy(signature, 0, content, 0, signature.length);
+        }
+
+        byte[] next() {
+            buffer.putLong(COUNTER_OFFSET, buffer.getLong(COUNTER_OFFSET) + 1);
+            return content;
+        }
+    }
+
+    // Файл удаляется сразу после загрузки, чтобы диск не заполнялся за время прогона
+    @Benchmark
+    public String store(Payload payload) throws IOException {
+        String imagePath = imageStorage.store(new ByteArrayInputStream(payload.next()));
+        imageStorage.release(imagePath);
+        return imagePath;
+    }
+}
@@ -0,0 +1,127 @@
+package Blog_V2.loadtest;
+
+import Blog_V2.dao.storage.ImageStorage;
+import Blog_V2.model.Post;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Синтетические данные батчами JDBC: посты, теги, комментарии и картинки у части постов.
+// Seed фиксирован, так что прогоны с одинаковыми параметрами работают с одинаковыми данными
+class DataGenerator {
+
+    static final int TAG_VOCABULARY = 200;
+    private static final int BATCH_SIZE = 1000;
+    private static final int DISTINCT_IMAGES = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageStorage imageStorage;
+    private final Random random = new Random(42);
+
+    DataGenerator(JdbcTemplate jdbcTemplate, ImageStorage imageStorage) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.imageStorage = imageStorage;
+    }
+
+    // Возвращает id созданных постов и id постов с картинками
+    Seeded seed(int posts, int tagsPerPost, int commentsPerPost, double imageShare) throws IOException {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= posts; i++) {
+            String text = text(i);
+            batch.add(new Object[]{"Post " + i, text, Post.preview(text), random.nextInt(500)});
+            if (batch.size() == BATCH_SIZE || i == posts) {
+                jdbcTemplate.batchUpdate("INSERT INTO posts (title, text, text_preview, likes_count) VALUES (?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        List<Integer> postIds = jdbcTemplate.queryForList("SELECT id FROM posts ORDER BY id", Integer.class);
+
+        for (int postId : postIds) {
+            // Популярные теги встречаются чаще: поиск по ним возвращает полные страницы
+            Set<String> tags = new LinkedHashSet<>();
+            while (tags.size() < Math.min(tagsPerPost, TAG_VOCABULARY)) {
+                tags.add("tag" + (int) (TAG_VOCABULARY * Math.pow(random.nextDouble(), 2)));
+            }
+            for (String tag : tags) {
+                batch.add(new Object[]{postId, tag});
+            }
+            flushIfFull("INSERT INTO tags (post_id, tag) VALUES (?, ?)", batch);
+        }
+        flush("INSERT INTO tags (post_id, tag) VALUES (?, ?)", batch);
+
+        for (int postId : postIds) {
+            for (int comment = 0; comment < commentsPerPost; comment++) {
+                batch.add(new Object[]{postId, "Comment " + comment + " on post " + postId});
+            }
+            flushIfFull("INSERT INTO comments (post_id, text) VALUES (?, ?)", batch);
+        }
+        flush("INSERT INTO comments (post_id, text) VALUES (?, ?)", batch);
+
+        // Картинки через ImageStorage: файлы, уменьшенные копии и счётчики ссылок как при загрузке из формы
+        List<byte[]> images = new ArrayList<>();
+        for (int i = 0; i < DISTINCT_IMAGES; i++) {
+            images.add(png(i));
+        }
+        List<Integer> withImages = new ArrayList<>();
+        for (int postId : postIds) {
+            if (random.nextDouble() < imageShare) {
+                String imagePath = imageStorage.store(new ByteArrayInputStream(images.get(random.nextInt(images.size()))));
+                batch.add(new Object[]{imagePath, postId});
+                withImages.add(postId);
+            }
+            flushIfFull("UPDATE posts SET image_path = ? WHERE id = ?", batch);
+        }
+        flush("UPDATE posts SET image_path = ? WHERE id = ?", batch);
+
+        return new Seeded(postIds, withImages);
+    }
+
+    private void flushIfFull(String sql, List<Object[]> batch) {
+        if (batch.size() >= BATCH_SIZE) {
+            flush(sql, batch);
+        }
+    }
+
+    private void flush(String sql, List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+            batch.clear();
+        }
+    }
+
+    private String text(int postId) {
+        StringBuilder text = new StringBuilder();
+        int lines = 3 + random.nextInt(20);
+        for (int line = 0; line < lines; line++) {
+            text.append("Line ").append(line).append(" of generated post ").append(postId).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static byte[] png(int seed) throws IOException {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.getHSBColor(seed / (float) DISTINCT_IMAGES, 0.6f, 0.9f));
+        graphics.fillRect(0, 0, 800, 600);
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.drawString("image " + seed, 20, 40);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    record Seeded(List<Integer> postIds, List<Integer> postsWithImages) {
+    }
+}
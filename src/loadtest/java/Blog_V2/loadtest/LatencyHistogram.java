@@ -0,0 +1,77 @@
+package Blog_V2.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма задержек в микросекундах без блокировок: значения до 32 считаются точно,
+// дальше каждая степень двойки делится на 16 корзин, так что перцентиль завышен не больше чем на ~6%
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    void record(long micros) {
+        counts.incrementAndGet(index(Math.max(micros, 0)));
+        total.increment();
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    // Для сводки по всем эндпоинтам
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+        total.add(other.count());
+        errors.add(other.errors());
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    // Верхняя граница корзины, в которую попал перцентиль
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS / 2;
+        return magnitude * SUB_BUCKETS / 2 + SUB_BUCKETS / 2 + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index - SUB_BUCKETS / 2) / (SUB_BUCKETS / 2);
+        int subBucket = (index - SUB_BUCKETS / 2) % (SUB_BUCKETS / 2);
+        return ((long) (SUB_BUCKETS / 2 + subBucket + 1) << magnitude) - 1;
+    }
+}
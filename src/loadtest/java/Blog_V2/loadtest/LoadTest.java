@@ -0,0 +1,271 @@
+package Blog_V2.loadtest;
+
+import Blog_V2.BlogGradleSpringWebappApplication;
+import Blog_V2.dao.storage.ImageStorage;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Нагрузочный прогон: поднимает приложение на случайном порту с отдельной H2 в памяти,
+// заполняет её DataGenerator'ом и гоняет смешанную нагрузку клиентами на виртуальных потоках.
+// Параметры - системные свойства loadtest.*, см. задачу loadTest в build.gradle
+public class LoadTest {
+
+    enum Operation {
+        FEED, SEARCH, POST, LIKE, COMMENT, IMAGE
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+    private final String baseUrl;
+    private final DataGenerator.Seeded data;
+    private final Map<Operation, Integer> mix;
+    private final int totalWeight;
+    private volatile boolean measuring;
+
+    LoadTest(String baseUrl, DataGenerator.Seeded data, Map<Operation, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.data = data;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int posts = Integer.getInteger("loadtest.posts", 10_000);
+        int tagsPerPost = Integer.getInteger("loadtest.tags-per-post", 3);
+        int commentsPerPost = Integer.getInteger("loadtest.comments-per-post", 5);
+        double imageShare = Double.parseDouble(System.getProperty("loadtest.image-share", "0.2"));
+        int clients = Integer.getInteger("loadtest.clients", 200);
+        Duration warmup = Duration.parse("PT" + System.getProperty("loadtest.warmup", "10s"));
+        Duration duration = Duration.parse("PT" + System.getProperty("loadtest.duration", "60s"));
+        Map<Operation, Integer> mix = parseMix(System.getProperty("loadtest.mix",
+                "feed=40,search=10,post=25,like=10,comment=5,image=10"));
+
+        Path reportDir = Paths.get(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+        String modes = System.getProperty("loadtest.modes", "");
+        if (modes.isBlank()) {
+            runMode("default", List.of(args), posts, tagsPerPost, commentsPerPost, imageShare, clients, warmup, duration, mix, reportDir);
+            return;
+        }
+
+        // Сравнение режимов потоков: каждый режим - отдельный запуск приложения на свежей базе
+        Map<String, LatencyHistogram> totals = new LinkedHashMap<>();
+        for (String mode : modes.split(",")) {
+            List<String> modeArgs = new ArrayList<>(modeArgs(mode.trim()));
+            modeArgs.addAll(List.of(args));
+            totals.put(mode.trim(), runMode(mode.trim(), modeArgs, posts, tagsPerPost, commentsPerPost, imageShare,
+                    clients, warmup, duration, new EnumMap<>(mix), reportDir));
+        }
+        System.out.printf("%n%-18s %10s %8s %10s %9s %9s %9s%n", "mode", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+        double seconds = duration.toMillis() / 1000.0;
+        totals.forEach((mode, histogram) -> System.out.printf(Locale.ROOT, "%-18s %10d %8d %10.1f %9s %9s %9s%n",
+                mode, histogram.count(), histogram.errors(), histogram.count() / seconds,
+                millis(histogram.percentile(50)), millis(histogram.percentile(99)), millis(histogram.percentile(99.9))));
+    }
+
+    // platform - пул потоков Tomcat; virtual - виртуальные потоки, все сразу идут в пул соединений;
+    // virtual-admission - виртуальные потоки с очередью перед пулом (ConnectionAdmissionDataSource)
+    private static List<String> modeArgs(String mode) {
+        return switch (mode) {
+            case "platform" -> List.of("--spring.threads.virtual.enabled=false", "--blog.db.admission.enabled=false");
+            case "virtual" -> List.of("--spring.threads.virtual.enabled=true", "--blog.db.admission.enabled=false");
+            case "virtual-admission" -> List.of("--spring.threads.virtual.enabled=true", "--blog.db.admission.enabled=true");
+            default -> throw new IllegalArgumentException("Unknown mode '" + mode + "', expected platform, virtual or virtual-admission");
+        };
+    }
+
+    // Возвращает сводную гистограмму по всем эндпоинтам
+    private static LatencyHistogram runMode(String mode, List<String> args, int posts, int tagsPerPost, int commentsPerPost,
+                                            double imageShare, int clients, Duration warmup, Duration duration,
+                                            Map<Operation, Integer> mix, Path reportDir) throws Exception {
+        Path imagesDir = Files.createTempDirectory("loadtest-images");
+        List<String> appArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                // У каждого режима своя база: DB_CLOSE_DELAY=-1 держит её в памяти и после остановки приложения
+                "--spring.datasource.url=jdbc:h2:mem:loadtest-" + mode + ";DB_CLOSE_DELAY=-1",
+                "--blog.images.dir=" + imagesDir,
+                "--logging.level.root=WARN"));
+        // Остальные аргументы - свойства приложения, например --blog.likes.buffered=true
+        appArgs.addAll(args);
+        ConfigurableApplicationContext context = SpringApplication.run(BlogGradleSpringWebappApplication.class,
+                appArgs.toArray(new String[0]));
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            long seedStart = System.nanoTime();
+            DataGenerator generator = new DataGenerator(context.getBean(JdbcTemplate.class), context.getBean(ImageStorage.class));
+            DataGenerator.Seeded data = generator.seed(posts, tagsPerPost, commentsPerPost, imageShare);
+            System.out.printf("Seeded %d posts (%d tags, %d comments each, %d with images) in %d ms%n",
+                    data.postIds().size(), tagsPerPost, commentsPerPost, data.postsWithImages().size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+            if (data.postsWithImages().isEmpty()) {
+                mix.remove(Operation.IMAGE);
+            }
+
+            LoadTest loadTest = new LoadTest("http://localhost:" + port, data, mix);
+            System.out.printf("Running %d clients in %s mode: warmup %s, measurement %s, mix %s%n", clients, mode, warmup, duration, mix);
+            loadTest.run(clients, warmup, duration);
+            return loadTest.report(mode, duration, reportDir);
+        } finally {
+            context.close();
+            FileSystemUtils.deleteRecursively(imagesDir);
+        }
+    }
+
+    // Закрытый цикл: каждый клиент отправляет следующий запрос, как только получил ответ на предыдущий
+    void run(int clients, Duration warmup, Duration duration) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long deadline = measureFrom + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        execute(nextOperation());
+                    }
+                });
+            }
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(Math.max(measureFrom - System.nanoTime(), 0)));
+            measuring = true;
+        }
+        measuring = false;
+    }
+
+    private Operation nextOperation() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            point -= entry.getValue();
+            if (point < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private void execute(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int postId = randomId(data.postIds());
+        HttpRequest request = switch (operation) {
+            case FEED -> get("/posts?pageSize=10&pageNumber=" + (random.nextInt(10) < 8 ? 1 : 2 + random.nextInt(20)));
+            case SEARCH -> get("/posts?pageSize=10&search=tag" + random.nextInt(DataGenerator.TAG_VOCABULARY / 10));
+            case POST -> get("/posts/" + postId);
+            case LIKE -> post("/posts/" + postId + "/like", "like=" + random.nextBoolean());
+            case COMMENT -> post("/posts/" + postId + "/comments", "text=Load+test+comment+" + random.nextInt(1_000_000));
+            case IMAGE -> get("/posts/images/" + randomId(data.postsWithImages()) + "?size=thumb");
+        };
+        // Записи отвечают редиректом на страницу поста, чтения - 200
+        int expectedStatus = operation == Operation.LIKE || operation == Operation.COMMENT ? 302 : 200;
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            if (measuring) {
+                if (response.statusCode() == expectedStatus) {
+                    histograms.get(operation).record(micros);
+                } else {
+                    histograms.get(operation).recordError();
+                }
+            }
+        } catch (IOException e) {
+            if (measuring) {
+                histograms.get(operation).recordError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String form) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+    }
+
+    private static int randomId(List<Integer> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    LatencyHistogram report(String mode, Duration duration, Path reportDir) throws IOException {
+        double seconds = duration.toMillis() / 1000.0;
+        LatencyHistogram all = new LatencyHistogram();
+        StringBuilder csv = new StringBuilder("endpoint,requests,errors,throughput_rps,p50_ms,p99_ms,p999_ms\n");
+        System.out.printf("%n%-10s %10s %8s %10s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+        long requests = 0;
+        for (Operation operation : mix.keySet()) {
+            LatencyHistogram histogram = histograms.get(operation);
+            requests += histogram.count();
+            all.add(histogram);
+            String[] row = {
+                    operation.name().toLowerCase(Locale.ROOT),
+                    Long.toString(histogram.count()),
+                    Long.toString(histogram.errors()),
+                    String.format(Locale.ROOT, "%.1f", histogram.count() / seconds),
+                    millis(histogram.percentile(50)),
+                    millis(histogram.percentile(99)),
+                    millis(histogram.percentile(99.9))
+            };
+            System.out.printf("%-10s %10s %8s %10s %9s %9s %9s%n", (Object[]) row);
+            csv.append(String.join(",", row)).append('\n');
+        }
+        System.out.printf("%-10s %10d %8s %10.1f%n", "total", requests, "", requests / seconds);
+
+        Files.createDirectories(reportDir);
+        Path report = reportDir.resolve("loadtest-" + mode + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report))) {
+            writer.print(csv);
+        }
+        System.out.println("Report: " + report.toAbsolutePath());
+        return all;
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        return weights;
+    }
+}
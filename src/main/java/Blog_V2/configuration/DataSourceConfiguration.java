@@ -0,0 +1,51 @@
+package Blog_V2.configuration;
+
+import Blog_V2.repository.ConnectionAdmissionDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+// Очередь к пулу соединений для режима виртуальных потоков (spring.threads.virtual.enabled=true)
+@Configuration
+@ConditionalOnProperty(name = "blog.db.admission.enabled", havingValue = "true")
+public class DataSourceConfiguration {
+
+    // static: как и в MetricsConfiguration, пост-процессор создаётся раньше остальных бинов
+    @Bean
+    public static BeanPostProcessor admissionDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionAdmissionDataSource)) {
+                    int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+                    return new ConnectionAdmissionDataSource(dataSource,
+                            environment.getProperty("blog.db.admission.permits", Integer.class, poolSize),
+                            environment.getProperty("blog.db.admission.max-waiting", Integer.class, 1000),
+                            environment.getProperty("blog.db.admission.timeout", Duration.class, Duration.ofSeconds(5)));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(DataSource dataSource) throws SQLException {
+        ConnectionAdmissionDataSource admission = dataSource.unwrap(ConnectionAdmissionDataSource.class);
+        return registry -> {
+            Gauge.builder("blog.db.admission.waiting", admission, ConnectionAdmissionDataSource::getWaiting)
+                    .description("Requests waiting for a database connection permit")
+                    .register(registry);
+            Gauge.builder("blog.db.admission.available", admission, ConnectionAdmissionDataSource::getAvailablePermits)
+                    .description("Free database connection permits")
+                    .register(registry);
+        };
+    }
+}
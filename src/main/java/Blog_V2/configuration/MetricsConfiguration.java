@@ -0,0 +1,43 @@
+package Blog_V2.configuration;
+
+import Blog_V2.metrics.ProfilingDataSource;
+import Blog_V2.metrics.QueryProfiler;
+import Blog_V2.metrics.StatementCounter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfiguration {
+
+    // static: пост-процессор создаётся раньше остальных бинов и не должен тянуть за собой конфигурацию.
+    // Прокси на каждое соединение нужен только профилировщику, без него DataSource не оборачивается
+    @Bean
+    @ConditionalOnProperty(name = "blog.profiler.enabled", havingValue = "true")
+    public static BeanPostProcessor profilingDataSourcePostProcessor(ObjectProvider<StatementCounter> statementCounter,
+                                                                     ObjectProvider<QueryProfiler> queryProfiler) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProfilingDataSource)) {
+                    return new ProfilingDataSource(dataSource, statementCounter.getObject(), queryProfiler.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "blog.profiler.enabled", havingValue = "true")
+    public MeterBinder statementMetrics(StatementCounter statementCounter) {
+        return registry -> FunctionCounter.builder("blog.db.statements", statementCounter, StatementCounter::total)
+                .description("SQL statements prepared")
+                .register(registry);
+    }
+}
@@ -1,21 +1,30 @@
 package Blog_V2.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.CacheControl;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @EnableWebMvc
 @ComponentScan("Blog_V2")
 @PropertySource("classpath:application.properties")
+@EnableScheduling
 public class WebConfiguration implements WebMvcConfigurer {
 
+    @Value("${blog.images.dir:uploads/images}")
+    private String imagesDir;
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         // Обслуживание статических ресурсов из /static/
@@ -23,8 +32,10 @@ public class WebConfiguration implements WebMvcConfigurer {
                 .addResourceLocations("classpath:/static/");
 
         // Обслуживание загруженных изображений из внешней директории
+        // Имя файла - хеш содержимого, так что кешируем их навсегда
         registry.addResourceHandler("/images/**")
-                .addResourceLocations("file:uploads/images/");
+                .addResourceLocations("file:" + imagesDir + "/")
+                .setCacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable());
     }
 
     @Bean
@@ -1,9 +1,18 @@
 package Blog_V2.controller;
 
+import Blog_V2.model.Comment;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.Page;
 import Blog_V2.model.Paging;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.StoredImage;
 import Blog_V2.service.PostService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -11,18 +20,21 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @RequestMapping("/posts")
 public class PostController {
 
     private final PostService postService;
+    // Та же длина страницы, что у первой страницы комментариев, которая грузится с постом
+    private final int commentsPageSize;
 
-    public PostController(PostService postService) {
+    public PostController(PostService postService,
+                          @Value("${blog.posts.comments-page-size:50}") int commentsPageSize) {
         this.postService = postService;
+        this.commentsPageSize = commentsPageSize;
     }
 
     @GetMapping("/")
@@ -35,10 +47,19 @@ public class PostController {
             @RequestParam(required = false, defaultValue = "") String search,
             @RequestParam(required = false, defaultValue = "10") int pageSize,
             @RequestParam(required = false, defaultValue = "1") int pageNumber,
+            @RequestParam(required = false) Integer before,
             Model model) {
 
-        List<Post> posts = postService.getPosts(search, pageSize, pageNumber);
-        Paging paging = postService.createPaging(search, pageSize, pageNumber);
+        List<PostSummary> posts;
+        Paging paging;
+        if (before != null) {
+            Page<PostSummary> page = postService.getPostsBefore(search, before, pageSize);
+            posts = page.getItems();
+            paging = page.getPaging();
+        } else {
+            posts = postService.getPosts(search, pageSize, pageNumber);
+            paging = postService.createPaging(search, pageSize, pageNumber);
+        }
 
         model.addAttribute("posts", posts);
         model.addAttribute("search", search);
@@ -67,25 +88,63 @@ public class PostController {
         return "redirect:/posts/" + id;
     }
     @GetMapping("/images/{id}")
-    public ResponseEntity<byte[]> getImage(@PathVariable int id) throws IOException {
-        byte[] imageBytes = postService.getImageByPostId(id);
-        if (imageBytes == null) {
+    public ResponseEntity<Resource> getImage(
+            @PathVariable int id,
+            @RequestParam(value = "size", required = false) String size,
+            @RequestParam(value = "v", required = false) String version) throws IOException {
+        ImageSize imageSize = ImageSize.fromParam(size);
+        StoredImage stored = postService.getImageResource(id, imageSize);
+        if (stored == null) {
             return ResponseEntity.notFound().build();
         }
+        Resource image = stored.getResource();
+
+        // Файл отдаётся потоком; заголовок Range Spring обрабатывает сам (206 Partial Content)
+        MediaType contentType = MediaTypeFactory.getMediaType(image)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
 
-        // Определяем тип содержимого (Content-Type) на основе расширения файла
-        String imagePath = postService.getPostById(id).getImagePath();
-        String contentType = Files.probeContentType(Paths.get(imagePath));
+        // Валидаторы берутся из метаданных файла: на If-None-Match/If-Modified-Since
+        // Spring отвечает 304, не открывая файл
+        long lastModified = image.lastModified();
+        String eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(image.contentLength()) + "\"";
+
+        // Имя файла не меняется после загрузки, поэтому ссылку с ?v=<имя файла> можно кешировать навсегда.
+        // Если вместо ещё не готовой уменьшенной копии пришлось отдать оригинал, кешировать его под этой ссылкой нельзя
+        CacheControl cacheControl = stored.isImmutable() && stored.getVersion().equals(version)
+                ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                : CacheControl.noCache();
 
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(imageBytes);
+                .contentType(contentType)
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(cacheControl)
+                .body(image);
     }
 
+    // Комментарии страницами: первая приходит вместе с постом, следующие - по курсору commentsAfter
     @GetMapping("/{id}")
-    public String post(@PathVariable int id, Model model) {
-        Post post = postService.getPostById(id);
+    public String post(
+            @PathVariable int id,
+            @RequestParam(required = false) Integer commentsAfter,
+            Model model) {
+        Post post;
+        List<Comment> comments;
+        Paging commentsPaging;
+        if (commentsAfter != null) {
+            post = postService.getPostWithoutComments(id);
+            Page<Comment> page = postService.getComments(id, commentsAfter, commentsPageSize);
+            comments = page.getItems();
+            commentsPaging = page.getPaging();
+        } else {
+            post = postService.getPostById(id);
+            comments = post.getComments();
+            commentsPaging = postService.createCommentPaging(post);
+        }
+
         model.addAttribute("post", post);
+        model.addAttribute("comments", comments);
+        model.addAttribute("commentsPaging", commentsPaging);
         return "post";
     }
     @PostMapping("/{id}/like")
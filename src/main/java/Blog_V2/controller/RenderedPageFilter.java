@@ -0,0 +1,125 @@
+package Blog_V2.controller;
+
+import Blog_V2.service.ContentVersions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Условный GET и кеш готового HTML для ленты (/posts) и страницы поста (/posts/{id}).
+// ETag - версия содержимого из ContentVersions, поэтому 304 отдаётся без запросов в базу и без рендеринга.
+// Кеш HTML включается blog.cache.html.enabled=true; версия входит в ключ, так что старые страницы просто вытесняются
+@Component
+public class RenderedPageFilter extends OncePerRequestFilter {
+
+    private static final Pattern FEED = Pattern.compile("/posts");
+    private static final Pattern POST = Pattern.compile("/posts/(\\d+)");
+
+    private final ContentVersions contentVersions;
+    private final boolean enabled;
+    private final Cache<String, RenderedPage> pages;
+
+    public RenderedPageFilter(ContentVersions contentVersions,
+                              @Value("${blog.cache.html.enabled:false}") boolean enabled,
+                              @Value("${blog.cache.html.max-size:8MB}") DataSize maxSize,
+                              @Value("${blog.cache.html.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.contentVersions = contentVersions;
+        this.enabled = enabled;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, RenderedPage page) -> key.length() + page.body.length)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public CacheStats stats() {
+        return pages.stats();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod()) || version(path(request)) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Версия берётся до рендеринга: страница может оказаться новее своего ETag, но не старее
+        long version = version(path(request));
+        String eTag = "\"" + Long.toHexString(contentVersions.getEpoch()) + "-" + version + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(eTag)) {
+            return;
+        }
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        if (!enabled) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = eTag + " " + request.getRequestURI()
+                + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+        RenderedPage page = pages.getIfPresent(key);
+        if (page != null) {
+            response.setContentType(page.contentType);
+            response.setContentLength(page.body.length);
+            response.getOutputStream().write(page.body);
+            return;
+        }
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+        String contentType = wrapper.getContentType();
+        // Только успешно отрисованные страницы, не редиректы и не ошибки
+        if (wrapper.getStatus() == HttpServletResponse.SC_OK && contentType != null && contentType.startsWith("text/html")) {
+            pages.put(key, new RenderedPage(contentType, wrapper.getContentAsByteArray()));
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    private String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private Long version(String path) {
+        if (FEED.matcher(path).matches()) {
+            return contentVersions.feedVersion();
+        }
+        Matcher post = POST.matcher(path);
+        if (post.matches()) {
+            try {
+                return contentVersions.postVersion(Integer.parseInt(post.group(1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static class RenderedPage {
+        private final String contentType;
+        private final byte[] body;
+
+        private RenderedPage(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
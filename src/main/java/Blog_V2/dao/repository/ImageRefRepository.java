@@ -0,0 +1,7 @@
+package Blog_V2.dao.repository;
+
+public interface ImageRefRepository {
+    public void acquire(String imagePath);
+    // true, если ссылок на картинку больше не осталось
+    public boolean release(String imagePath);
+}
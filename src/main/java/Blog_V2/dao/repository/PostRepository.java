@@ -2,17 +2,28 @@ package Blog_V2.dao.repository;
 
 
 
+import Blog_V2.model.Comment;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface PostRepository {
     public void save(Post post);
     public Optional<Post> findById(Integer id);
-    public List<Post> getPosts(String search, int pageSize, int pageNumber);
+    public Optional<Post> findByIdWithoutComments(Integer id);
+    public Optional<String> findImagePath(int postId);
+    public boolean existsById(int postId);
+    public List<PostSummary> getPosts(String search, int pageSize, int pageNumber);
+    public List<PostSummary> getPostsBefore(String search, int beforeId, int limit);
     public boolean hasMorePosts(String search, int pageSize, int pageNumber);
-    public void deleteComment(int postId, int commentId);
-    public void editComment(int postId, int commentId, String text);
+    public boolean updateLikes(int postId, int delta);
+    public void applyLikeDeltas(Map<Integer, Integer> deltas);
+    public List<Comment> getComments(int postId, int afterId, int limit);
+    public boolean addComment(int postId, String text);
+    public boolean deleteComment(int postId, int commentId);
+    public boolean editComment(int postId, int commentId, String text);
     public void deletePost(int postId);
 }
@@ -0,0 +1,17 @@
+package Blog_V2.dao.storage;
+
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.StoredImage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ImageStorage {
+    // Сохраняет картинку и возвращает путь вида /images/...; каждый вызов - ещё одна ссылка на картинку.
+    // Формат определяется по содержимому, не картинка - InvalidImageException
+    public String store(InputStream content) throws IOException;
+    // Картинка нужного размера (или оригинал, если копии нет); null, если файла нет
+    public StoredImage load(String imagePath, ImageSize size);
+    // Снимает одну ссылку; картинка без ссылок удаляется
+    public void release(String imagePath);
+}
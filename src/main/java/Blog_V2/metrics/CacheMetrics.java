@@ -0,0 +1,53 @@
+package Blog_V2.metrics;
+
+import Blog_V2.controller.RenderedPageFilter;
+import Blog_V2.repository.CachingPostRepository;
+import Blog_V2.repository.FeedCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+// Статистика кешей постов, ленты и HTML в тех же именах, что у Micrometer для Caffeine:
+// cache.gets{result=hit|miss}, cache.evictions и cache.hit.ratio. Считается при чтении метрик
+@Component
+public class CacheMetrics implements MeterBinder {
+
+    private final CachingPostRepository postRepository;
+    private final FeedCache feedCache;
+    private final RenderedPageFilter renderedPageFilter;
+
+    public CacheMetrics(CachingPostRepository postRepository, FeedCache feedCache, RenderedPageFilter renderedPageFilter) {
+        this.postRepository = postRepository;
+        this.feedCache = feedCache;
+        this.renderedPageFilter = renderedPageFilter;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "posts", postRepository::stats);
+        bind(registry, "feed", feedCache::stats);
+        bind(registry, "html", renderedPageFilter::stats);
+    }
+
+    private static void bind(MeterRegistry registry, String cache, Supplier<CacheStats> stats) {
+        FunctionCounter.builder("cache.gets", stats, s -> s.get().hitCount())
+                .tag("cache", cache)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", stats, s -> s.get().missCount())
+                .tag("cache", cache)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", stats, s -> s.get().evictionCount())
+                .tag("cache", cache)
+                .register(registry);
+        Gauge.builder("cache.hit.ratio", stats, s -> s.get().hitRate())
+                .tag("cache", cache)
+                .register(registry);
+    }
+}
@@ -0,0 +1,49 @@
+package Blog_V2.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Таймеры name{method=...} для всех публичных методов type (или для перечисленных), созданные заранее.
+// На горячем пути только System.nanoTime() и поиск по строковой константе - без аллокаций:
+//   long start = System.nanoTime();
+//   try { ... } finally { timers.record("getPosts", start); }
+public class MethodTimers {
+
+    private final Map<String, Timer> timers = new HashMap<>();
+
+    public MethodTimers(MeterRegistry registry, String name, Class<?> type) {
+        for (Method method : type.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())) {
+                // Перегрузки пишут в один таймер
+                register(registry, name, method.getName());
+            }
+        }
+    }
+
+    // Только перечисленные методы: когда замерять нужно не все публичные
+    public MethodTimers(MeterRegistry registry, String name, String... methods) {
+        for (String method : methods) {
+            register(registry, name, method);
+        }
+    }
+
+    private void register(MeterRegistry registry, String name, String method) {
+        timers.computeIfAbsent(method, methodName -> Timer.builder(name)
+                .tag("method", methodName)
+                .register(registry));
+    }
+
+    public void record(String method, long startNanos) {
+        Timer timer = timers.get(method);
+        if (timer == null) {
+            throw new IllegalArgumentException("No timer for method " + method);
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,83 @@
+package Blog_V2.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Считает подготовленные statements (JdbcTemplate готовит по одному на запрос и на batchUpdate целиком),
+// а если в потоке идёт профилирование (QueryProfiler), ещё и засекает время выполнения каждого.
+// Подключается только с blog.profiler.enabled=true (MetricsConfiguration)
+public class ProfilingDataSource extends DelegatingDataSource {
+
+    private final StatementCounter counter;
+    private final QueryProfiler profiler;
+
+    public ProfilingDataSource(DataSource dataSource, StatementCounter counter, QueryProfiler profiler) {
+        super(dataSource);
+        this.counter = counter;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return profiling(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return profiling(super.getConnection(username, password));
+    }
+
+    private Connection profiling(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    boolean prepare = name.startsWith("prepare");
+                    if (prepare || name.equals("createStatement")) {
+                        counter.increment();
+                    }
+                    Object result = invoke(connection, method, args);
+                    QueryProfile profile = profiler.current();
+                    if (profile != null && result instanceof Statement statement) {
+                        return timed(statement, method.getReturnType(), prepare ? (String) args[0] : null, profile);
+                    }
+                    return result;
+                });
+    }
+
+    // sql == null - обычный Statement, текст приходит в execute*(sql)
+    private static Object timed(Statement statement, Class<?> type, String sql, QueryProfile profile) {
+        return Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(statement, method, args);
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        String executed = sql != null ? sql
+                                : args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                        profile.record(executed, System.nanoTime() - start);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package Blog_V2.metrics;
+
+public class QueryBudgetExceededException extends RuntimeException {
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,103 @@
+package Blog_V2.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// SQL одного HTTP-запроса (или одного QueryProfiler.profile), сгруппированный по форме запроса
+public class QueryProfile {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, Shape> shapes = new LinkedHashMap<>();
+    private int statements;
+    private long nanos;
+
+    void record(String sql, long elapsedNanos) {
+        shapes.computeIfAbsent(normalize(sql), Shape::new).add(elapsedNanos);
+        statements++;
+        nanos += elapsedNanos;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    // По убыванию суммарного времени
+    public List<Shape> getShapes() {
+        List<Shape> sorted = new ArrayList<>(shapes.values());
+        sorted.sort(Comparator.comparingLong(Shape::getNanos).reversed());
+        return sorted;
+    }
+
+    // Одна и та же форма запроса threshold и более раз - похоже на запрос в цикле (N+1)
+    public List<Shape> getRepeated(int threshold) {
+        return getShapes().stream()
+                .filter(shape -> shape.getCount() >= threshold)
+                .toList();
+    }
+
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append(statements).append(" statements, ").append(millis(nanos)).append(" ms in SQL");
+        for (Shape shape : getShapes()) {
+            text.append("\n  ").append(shape.getCount()).append("x ").append(millis(shape.getNanos())).append(" ms  ")
+                    .append(shape.getSql());
+        }
+        return text.toString();
+    }
+
+    // Литералы и списки IN (?, ?, ...) заменяются на ?: запросы, различающиеся только значениями, - одна форма
+    static String normalize(String sql) {
+        if (sql == null) {
+            return "<batch>";
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("(?...)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public static class Shape {
+        private final String sql;
+        private int count;
+        private long nanos;
+
+        private Shape(String sql) {
+            this.sql = sql;
+        }
+
+        private void add(long elapsedNanos) {
+            count++;
+            nanos += elapsedNanos;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
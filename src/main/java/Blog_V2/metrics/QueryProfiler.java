@@ -0,0 +1,124 @@
+package Blog_V2.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Профиль SQL на HTTP-запрос (blog.profiler.enabled=true): все запросы с нормализованным текстом и временем.
+// Предупреждает о повторяющихся формах запросов (N+1) и о медленных запросах с разбивкой по SQL,
+// а бюджет blog.profiler.budgets ("GET /posts=2, GET /posts/{id}=3") при fail-on-budget=true роняет запрос
+@Component
+public class QueryProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryProfiler.class);
+
+    private final ThreadLocal<QueryProfile> current = new ThreadLocal<>();
+    private final boolean enabled;
+    private final Duration slowRequest;
+    private final int nPlusOneThreshold;
+    private final Map<String, Integer> budgets;
+    private final boolean failOnBudget;
+
+    public QueryProfiler(@Value("${blog.profiler.enabled:false}") boolean enabled,
+                         @Value("${blog.profiler.slow-request:500ms}") Duration slowRequest,
+                         @Value("${blog.profiler.n-plus-one-threshold:3}") int nPlusOneThreshold,
+                         @Value("${blog.profiler.budgets:}") String budgets,
+                         @Value("${blog.profiler.fail-on-budget:false}") boolean failOnBudget) {
+        this.enabled = enabled;
+        this.slowRequest = slowRequest;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+        this.budgets = parseBudgets(budgets);
+        this.failOnBudget = failOnBudget;
+    }
+
+    // Выключен - ProfilingDataSource не подключён и SQL не считается
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Профиль, в который сейчас пишет ProfilingDataSource; null - профилирование выключено
+    QueryProfile current() {
+        return current.get();
+    }
+
+    public void begin() {
+        if (enabled) {
+            current.set(new QueryProfile());
+        }
+    }
+
+    // Завершает профиль запроса и пишет предупреждения; исключение о превышении бюджета - в enforceBudget
+    public QueryProfile end(String method, String uri, long elapsedNanos) {
+        QueryProfile profile = current.get();
+        if (profile == null) {
+            return null;
+        }
+        current.remove();
+        String endpoint = method + " " + uri;
+        List<QueryProfile.Shape> repeated = profile.getRepeated(nPlusOneThreshold);
+        if (!repeated.isEmpty()) {
+            log.warn("Suspected N+1 in {}: {}", endpoint, repeated.stream()
+                    .map(shape -> shape.getCount() + "x " + shape.getSql())
+                    .toList());
+        }
+        if (elapsedNanos >= slowRequest.toNanos()) {
+            log.warn("Slow request {} took {} ms: {}", endpoint, Duration.ofNanos(elapsedNanos).toMillis(), profile.describe());
+        }
+        return profile;
+    }
+
+    public void enforceBudget(String method, String uri, QueryProfile profile) {
+        if (profile == null) {
+            return;
+        }
+        String endpoint = method + " " + uri;
+        Integer budget = budgets.get(endpoint);
+        if (budget != null && profile.getStatements() > budget) {
+            String message = "Query budget exceeded for " + endpoint + ": " + profile.getStatements()
+                    + " > " + budget + "\n" + profile.describe();
+            if (failOnBudget) {
+                throw new QueryBudgetExceededException(message);
+            }
+            log.warn(message);
+        }
+    }
+
+    // Профиль произвольного кода вне HTTP-запроса, например в тестах репозитория; работает и при enabled=false
+    public QueryProfile profile(Runnable action) {
+        QueryProfile previous = current.get();
+        QueryProfile profile = new QueryProfile();
+        current.set(profile);
+        try {
+            action.run();
+        } finally {
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+        return profile;
+    }
+
+    private static Map<String, Integer> parseBudgets(String budgets) {
+        Map<String, Integer> parsed = new HashMap<>();
+        for (String entry : budgets.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid query budget '" + entry.trim() + "', expected 'GET /uri=N'");
+            }
+            parsed.put(entry.substring(0, separator).trim().replaceAll("\\s+", " "),
+                    Integer.parseInt(entry.substring(separator + 1).trim()));
+        }
+        return parsed;
+    }
+}
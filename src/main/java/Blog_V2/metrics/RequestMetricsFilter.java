@@ -0,0 +1,100 @@
+package Blog_V2.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// SQL-запросов на HTTP-запрос (blog.request.statements{method,uri}, только с blog.profiler.enabled=true),
+// байты отданных картинок и профиль запроса для QueryProfiler. Стоит первым, поэтому страницы из кеша RenderedPageFilter видны как запросы без SQL
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final String IMAGE_URI = "/posts/images/{id}";
+
+    private final StatementCounter statementCounter;
+    private final QueryProfiler queryProfiler;
+    private final MeterRegistry registry;
+    private final Counter imageBytes;
+    // method -> шаблон uri -> summary: ключи - уже существующие строки, так что поиск ничего не создаёт
+    private final Map<String, Map<String, DistributionSummary>> statements = new ConcurrentHashMap<>();
+
+    public RequestMetricsFilter(StatementCounter statementCounter, QueryProfiler queryProfiler, MeterRegistry registry) {
+        this.statementCounter = statementCounter;
+        this.queryProfiler = queryProfiler;
+        this.registry = registry;
+        this.imageBytes = Counter.builder("blog.images.served")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean countStatements = queryProfiler.isEnabled();
+        if (countStatements) {
+            statementCounter.resetCurrent();
+        }
+        queryProfiler.begin();
+        long start = System.nanoTime();
+        String uri = "UNKNOWN";
+        QueryProfile profile;
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern != null) {
+                uri = pattern.toString();
+            }
+            if (countStatements) {
+                summary(request.getMethod(), uri).record(statementCounter.current());
+            }
+            if (IMAGE_URI.equals(uri)) {
+                countImageBytes(response);
+            }
+            profile = queryProfiler.end(request.getMethod(), uri, System.nanoTime() - start);
+        }
+        // Только если сам запрос прошёл без ошибок, иначе исключение бюджета скрыло бы настоящее
+        queryProfiler.enforceBudget(request.getMethod(), uri, profile);
+    }
+
+    private DistributionSummary summary(String method, String uri) {
+        Map<String, DistributionSummary> byUri = statements.get(method);
+        if (byUri == null) {
+            byUri = statements.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+        DistributionSummary summary = byUri.get(uri);
+        if (summary == null) {
+            summary = byUri.computeIfAbsent(uri, key -> DistributionSummary.builder("blog.request.statements")
+                    .description("SQL statements per HTTP request")
+                    .tag("method", method)
+                    .tag("uri", key)
+                    .register(registry));
+        }
+        return summary;
+    }
+
+    // 304 приходит без тела, у 200 и 206 Content-Length - размер отданной части файла
+    private void countImageBytes(HttpServletResponse response) {
+        int status = response.getStatus();
+        String length = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        if ((status == HttpServletResponse.SC_OK || status == HttpServletResponse.SC_PARTIAL_CONTENT) && length != null) {
+            imageBytes.increment(Long.parseLong(length));
+        }
+    }
+}
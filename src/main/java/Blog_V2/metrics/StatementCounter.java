@@ -0,0 +1,30 @@
+package Blog_V2.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Число SQL-запросов: всего и в текущем потоке (то есть в текущем HTTP-запросе, см. RequestMetricsFilter)
+@Component
+public class StatementCounter {
+
+    private final LongAdder total = new LongAdder();
+    private final ThreadLocal<long[]> current = ThreadLocal.withInitial(() -> new long[1]);
+
+    public void increment() {
+        total.increment();
+        current.get()[0]++;
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    public void resetCurrent() {
+        current.get()[0] = 0;
+    }
+
+    public long current() {
+        return current.get()[0];
+    }
+}
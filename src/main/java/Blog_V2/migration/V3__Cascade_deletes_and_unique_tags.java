@@ -0,0 +1,68 @@
+package Blog_V2.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Внешние ключи tags и comments на posts с ON DELETE CASCADE и уникальный (post_id, tag).
+// На Java, потому что у ключей из версии 1 нет имён: их имена берутся из метаданных базы
+public class V3__Cascade_deletes_and_unique_tags extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            removeDuplicateTags(statement);
+            // Индекс ограничения начинается с post_id: он же обслуживает выборку тегов поста и каскадное удаление
+            statement.execute("ALTER TABLE tags ADD CONSTRAINT uq_tags_post_id_tag UNIQUE (post_id, tag)");
+            // Ключи пересоздаются после индексов (idx_comments_post_id_id - из версии 2), чтобы использовать их,
+            // а не заводить свои на post_id
+            for (String table : List.of("tags", "comments")) {
+                for (String foreignKey : foreignKeysToPosts(connection, table)) {
+                    statement.execute("ALTER TABLE " + table + " DROP CONSTRAINT " + foreignKey);
+                }
+                statement.execute("ALTER TABLE " + table + " ADD CONSTRAINT fk_" + table + "_post_id "
+                        + "FOREIGN KEY (post_id) REFERENCES posts(id) ON DELETE CASCADE");
+            }
+        }
+    }
+
+    // Раньше ничто не мешало сохранить один тег поста дважды
+    private static void removeDuplicateTags(Statement statement) throws SQLException {
+        try (ResultSet duplicates = statement.executeQuery(
+                "SELECT COUNT(*) FROM (SELECT post_id, tag FROM tags GROUP BY post_id, tag HAVING COUNT(*) > 1) d")) {
+            duplicates.next();
+            if (duplicates.getLong(1) == 0) {
+                return;
+            }
+        }
+        statement.execute("CREATE TABLE tags_distinct AS SELECT DISTINCT post_id, tag FROM tags");
+        statement.execute("DELETE FROM tags");
+        statement.execute("INSERT INTO tags (post_id, tag) SELECT post_id, tag FROM tags_distinct");
+        statement.execute("DROP TABLE tags_distinct");
+    }
+
+    private static List<String> foreignKeysToPosts(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        String quote = metaData.getIdentifierQuoteString().trim();
+        List<String> foreignKeys = new ArrayList<>();
+        try (ResultSet keys = metaData.getImportedKeys(connection.getCatalog(), connection.getSchema(), name)) {
+            while (keys.next()) {
+                String foreignKey = quote + keys.getString("FK_NAME") + quote;
+                if ("posts".equalsIgnoreCase(keys.getString("PKTABLE_NAME")) && !foreignKeys.contains(foreignKey)) {
+                    foreignKeys.add(foreignKey);
+                }
+            }
+        }
+        return foreignKeys;
+    }
+}
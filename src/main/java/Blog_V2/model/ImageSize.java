@@ -0,0 +1,46 @@
+package Blog_V2.model;
+
+// Уменьшенные копии картинки поста; оригинал отдаётся, если size не указан
+public enum ImageSize {
+    THUMBNAIL("thumb", 1200, 300),
+    FULL("full", 1600, 1600);
+
+    private final String param;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    ImageSize(String param, int maxWidth, int maxHeight) {
+        this.param = param;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    public static ImageSize fromParam(String param) {
+        for (ImageSize size : values()) {
+            if (size.param.equalsIgnoreCase(param)) {
+                return size;
+            }
+        }
+        return null;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    // 123_cat.jpg -> 123_cat.thumb.jpg
+    public String fileName(String originalFileName) {
+        int dot = originalFileName.lastIndexOf('.');
+        return dot > 0
+                ? originalFileName.substring(0, dot) + "." + param + originalFileName.substring(dot)
+                : originalFileName + "." + param;
+    }
+}
@@ -0,0 +1,69 @@
+package Blog_V2.model;
+
+import java.nio.charset.StandardCharsets;
+
+// Формат картинки по первым байтам файла, а не по имени и Content-Type от клиента
+public enum ImageType {
+    JPEG("jpg", "image/jpeg"),
+    PNG("png", "image/png"),
+    GIF("gif", "image/gif"),
+    WEBP("webp", "image/webp"),
+    BMP("bmp", "image/bmp");
+
+    // Столько байт нужно, чтобы узнать любой из форматов
+    public static final int HEADER_LENGTH = 12;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final String extension;
+    private final String contentType;
+
+    ImageType(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    // null, если это не картинка поддерживаемого формата
+    public static ImageType detect(byte[] header) {
+        if (startsWith(header, 0, (byte) 0xFF, (byte) 0xD8, (byte) 0xFF)) {
+            return JPEG;
+        }
+        if (startsWith(header, 0, PNG_SIGNATURE)) {
+            return PNG;
+        }
+        if (startsWith(header, 0, ascii("GIF87a")) || startsWith(header, 0, ascii("GIF89a"))) {
+            return GIF;
+        }
+        if (startsWith(header, 0, ascii("RIFF")) && startsWith(header, 8, ascii("WEBP"))) {
+            return WEBP;
+        }
+        if (startsWith(header, 0, ascii("BM"))) {
+            return BMP;
+        }
+        return null;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, byte... signature) {
+        if (header.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String signature) {
+        return signature.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,22 @@
+package Blog_V2.model;
+
+import java.util.List;
+
+// Страница ленты или комментариев по курсору вместе с её навигацией
+public class Page<T> {
+    private final List<T> items;
+    private final Paging paging;
+
+    public Page(List<T> items, Paging paging) {
+        this.items = items;
+        this.paging = paging;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public Paging getPaging() {
+        return paging;
+    }
+}
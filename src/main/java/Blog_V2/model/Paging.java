@@ -5,6 +5,12 @@ public class Paging {
     private int pageSize;
     private boolean hasNext;
     private boolean hasPrevious;
+    // Курсор keyset-режима: id, после которого начинается страница
+    private Integer before;
+    private Integer nextBefore;
+    // Курсор комментариев: страница начинается после комментария с этим id
+    private Integer after;
+    private Integer nextAfter;
 
     // Геттеры и сеттеры в стандартном Java-стиле
     public int getPageNumber() {
@@ -39,6 +45,38 @@ public class Paging {
         this.hasPrevious = hasPrevious;
     }
 
+    public Integer getBefore() {
+        return before;
+    }
+
+    public void setBefore(Integer before) {
+        this.before = before;
+    }
+
+    public Integer getNextBefore() {
+        return nextBefore;
+    }
+
+    public void setNextBefore(Integer nextBefore) {
+        this.nextBefore = nextBefore;
+    }
+
+    public Integer getAfter() {
+        return after;
+    }
+
+    public void setAfter(Integer after) {
+        this.after = after;
+    }
+
+    public Integer getNextAfter() {
+        return nextAfter;
+    }
+
+    public void setNextAfter(Integer nextAfter) {
+        this.nextAfter = nextAfter;
+    }
+
     // Дополнительные методы для совместимости с Thymeleaf
     public int pageNumber() {
         return pageNumber;
@@ -55,4 +93,20 @@ public class Paging {
     public boolean hasPrevious() {
         return hasPrevious;
     }
+
+    public Integer before() {
+        return before;
+    }
+
+    public Integer nextBefore() {
+        return nextBefore;
+    }
+
+    public Integer after() {
+        return after;
+    }
+
+    public Integer nextAfter() {
+        return nextAfter;
+    }
 }
\ No newline at end of file
@@ -6,8 +6,9 @@ import jakarta.persistence.GenerationType;
 import org.springframework.data.annotation.Id;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 public class Post {
     @Id
@@ -19,7 +20,16 @@ public class Post {
     private int likesCount;
     @ElementCollection
     private List<String> tags;
+    // Первая страница комментариев; всего их commentsCount
     private List<Comment> comments;
+    private int commentsCount;
+    // Превью хранится в базе (text_preview), абзацы считаются один раз при первом обращении
+    private String textPreview;
+    private List<String> textParts;
+    // Состояние на момент последней загрузки/сохранения: save пишет только то, что изменилось
+    private boolean dirty = true;
+    private List<String> persistedTags;
+    private List<Comment> newComments = new ArrayList<>();
     public Post() {
         this.comments = new ArrayList<>();
     }
@@ -46,7 +56,10 @@ public class Post {
     }
 
     public void setTitle(String title) {
-        this.title = title;
+        if (!Objects.equals(this.title, title)) {
+            this.title = title;
+            this.dirty = true;
+        }
     }
 
     public String getText() {
@@ -54,7 +67,12 @@ public class Post {
     }
 
     public void setText(String text) {
-        this.text = text;
+        if (!Objects.equals(this.text, text)) {
+            this.text = text;
+            this.textPreview = null;
+            this.textParts = null;
+            this.dirty = true;
+        }
     }
 
     public String getImagePath() {
@@ -62,7 +80,10 @@ public class Post {
     }
 
     public void setImagePath(String imagePath) {
-        this.imagePath = imagePath;
+        if (!Objects.equals(this.imagePath, imagePath)) {
+            this.imagePath = imagePath;
+            this.dirty = true;
+        }
     }
 
     public int getLikesCount() {
@@ -70,7 +91,10 @@ public class Post {
     }
 
     public void setLikesCount(int likesCount) {
-        this.likesCount = likesCount;
+        if (this.likesCount != likesCount) {
+            this.likesCount = likesCount;
+            this.dirty = true;
+        }
     }
 
     public List<String> getTags() {
@@ -87,22 +111,56 @@ public class Post {
 
     public void setComments(List<Comment> comments) {
         this.comments = comments;
+        this.newComments = new ArrayList<>();
+        if (comments != null) {
+            for (Comment comment : comments) {
+                if (comment.getId() == 0) {
+                    newComments.add(comment);
+                }
+            }
+        }
+    }
+
+    public int getCommentsCount() {
+        return commentsCount;
+    }
+
+    public void setCommentsCount(int commentsCount) {
+        this.commentsCount = commentsCount;
     }
 
     // Методы для Thymeleaf
     public String getTextPreview() {
+        if (textPreview == null) {
+            textPreview = preview(text);
+        }
+        return textPreview;
+    }
+
+    public void setTextPreview(String textPreview) {
+        this.textPreview = textPreview;
+    }
+
+    public static String preview(String text) {
         return text != null && text.length() > 100 ? text.substring(0, 100) + "..." : text;
     }
 
+    // Имя файла картинки: версия для ссылки /posts/images/{id}?v=...
+    public String getImageVersion() {
+        return imagePath != null ? imagePath.substring(imagePath.lastIndexOf('/') + 1) : null;
+    }
+
     public String getTagsAsText() {
         return tags != null ? String.join(", ", tags) : "";
     }
 
     public List<String> getTextParts() {
-        if (text == null || text.isEmpty()) {
-            return new ArrayList<>();
+        if (textParts == null) {
+            textParts = text == null || text.isEmpty()
+                    ? Collections.emptyList()
+                    : text.lines().toList();
         }
-        return Arrays.asList(text.split("\\r?\\n"));
+        return textParts;
     }
 
     public void addComment(Comment comment) {
@@ -110,6 +168,49 @@ public class Post {
             comments = new ArrayList<>();
         }
         comments.add(comment);
+        newComments.add(comment);
+        commentsCount++;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    // Теги в том виде, как они лежат в базе; null - неизвестно (пост собран не из базы)
+    public List<String> getPersistedTags() {
+        return persistedTags;
+    }
+
+    public List<Comment> getNewComments() {
+        return newComments;
+    }
+
+    public void markPersisted() {
+        this.dirty = false;
+        this.persistedTags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+        this.newComments = new ArrayList<>();
+    }
+
+    // Независимая копия вместе с состоянием сохранения: её можно менять и сохранять, не трогая оригинал
+    public Post copy() {
+        Post copy = new Post(id, title, text, imagePath, tags != null ? new ArrayList<>(tags) : null);
+        copy.likesCount = likesCount;
+        copy.commentsCount = commentsCount;
+        copy.textPreview = textPreview;
+        copy.textParts = textParts;
+        copy.dirty = dirty;
+        copy.persistedTags = persistedTags != null ? new ArrayList<>(persistedTags) : null;
+        copy.comments = comments != null ? new ArrayList<>() : null;
+        if (comments != null) {
+            for (Comment comment : comments) {
+                Comment commentCopy = new Comment(comment.getId(), comment.getText());
+                copy.comments.add(commentCopy);
+                if (newComments.contains(comment)) {
+                    copy.newComments.add(commentCopy);
+                }
+            }
+        }
+        return copy;
     }
 
     // Методы без get
@@ -0,0 +1,107 @@
+package Blog_V2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Пост в ленте: только то, что показывает posts.html. Вместо комментариев - их число
+public class PostSummary {
+    private int id;
+    private String title;
+    private String textPreview;
+    private String imagePath;
+    private int likesCount;
+    private List<String> tags = new ArrayList<>();
+    private int commentsCount;
+
+    public PostSummary() {
+    }
+
+    public static PostSummary of(Post post) {
+        PostSummary summary = new PostSummary();
+        summary.id = post.getId();
+        summary.title = post.getTitle();
+        summary.textPreview = post.getTextPreview();
+        summary.imagePath = post.getImagePath();
+        summary.likesCount = post.getLikesCount();
+        // Как в ленте из базы: LISTAGG отдаёт теги без повторов и по алфавиту
+        summary.tags = post.getTags() != null
+                ? post.getTags().stream().distinct().sorted().collect(Collectors.toCollection(ArrayList::new))
+                : new ArrayList<>();
+        summary.commentsCount = post.getCommentsCount();
+        return summary;
+    }
+
+    public PostSummary copy() {
+        PostSummary copy = new PostSummary();
+        copy.id = id;
+        copy.title = title;
+        copy.textPreview = textPreview;
+        copy.imagePath = imagePath;
+        copy.likesCount = likesCount;
+        copy.tags = new ArrayList<>(tags);
+        copy.commentsCount = commentsCount;
+        return copy;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getTextPreview() {
+        return textPreview;
+    }
+
+    public void setTextPreview(String textPreview) {
+        this.textPreview = textPreview;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public int getLikesCount() {
+        return likesCount;
+    }
+
+    public void setLikesCount(int likesCount) {
+        this.likesCount = likesCount;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public int getCommentsCount() {
+        return commentsCount;
+    }
+
+    public void setCommentsCount(int commentsCount) {
+        this.commentsCount = commentsCount;
+    }
+
+    // Имя файла картинки: версия для ссылки /posts/images/{id}?v=...
+    public String getImageVersion() {
+        return imagePath != null ? imagePath.substring(imagePath.lastIndexOf('/') + 1) : null;
+    }
+}
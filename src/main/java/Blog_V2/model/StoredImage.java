@@ -0,0 +1,30 @@
+package Blog_V2.model;
+
+import org.springframework.core.io.Resource;
+
+// Файл картинки для ответа на /posts/images/{id}
+public class StoredImage {
+    private final Resource resource;
+    // Имя файла оригинала, оно же версия в ссылке ?v=...
+    private final String version;
+    // Для запрошенного размера ничего другого отдаваться уже не будет: копия готова или не нужна
+    private final boolean immutable;
+
+    public StoredImage(Resource resource, String version, boolean immutable) {
+        this.resource = resource;
+        this.version = version;
+        this.immutable = immutable;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+}
@@ -0,0 +1,65 @@
+package Blog_V2.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Разбор строки поиска по тегам:
+// "java, spring" - посты с любым из тегов, "java + spring" - посты со всеми тегами
+public class TagSearch {
+    private static final TagSearch EMPTY = new TagSearch(Collections.emptyList(), false);
+
+    private final List<String> tags;
+    private final boolean matchAll;
+
+    private TagSearch(List<String> tags, boolean matchAll) {
+        this.tags = tags;
+        this.matchAll = matchAll;
+    }
+
+    public static TagSearch parse(String search) {
+        if (search == null || search.trim().isEmpty()) {
+            return EMPTY;
+        }
+        boolean matchAll = search.contains("+");
+        Set<String> tags = new LinkedHashSet<>();
+        for (String part : search.split(matchAll ? "\\+" : ",")) {
+            String tag = part.trim();
+            while (tag.startsWith("#")) {
+                tag = tag.substring(1).trim();
+            }
+            if (!tag.isEmpty()) {
+                tags.add(tag);
+            }
+        }
+        if (tags.isEmpty()) {
+            return EMPTY;
+        }
+        return new TagSearch(Collections.unmodifiableList(new ArrayList<>(tags)), matchAll && tags.size() > 1);
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public boolean isMatchAll() {
+        return matchAll;
+    }
+
+    public boolean isEmpty() {
+        return tags.isEmpty();
+    }
+
+    // Попадает ли пост с такими тегами в результаты поиска (то же условие, что и в SQL)
+    public boolean matches(List<String> postTags) {
+        if (tags.isEmpty()) {
+            return true;
+        }
+        if (postTags == null) {
+            return false;
+        }
+        return matchAll ? postTags.containsAll(tags) : tags.stream().anyMatch(postTags::contains);
+    }
+}
@@ -0,0 +1,236 @@
+package Blog_V2.repository;
+
+import Blog_V2.dao.repository.PostRepository;
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+// Кеш собранных постов (пост + теги + первая страница комментариев) и первых страниц ленты перед JdbcPostRepository.
+// Каждое изменение поста выкидывает его из кеша, наружу отдаются только копии
+@Repository
+public class CachingPostRepository implements PostRepository {
+
+    private final JdbcPostRepository delegate;
+    private final FeedCache feedCache;
+    private final Cache<Integer, Post> posts;
+
+    public CachingPostRepository(JdbcPostRepository delegate,
+                                 FeedCache feedCache,
+                                 @Value("${blog.cache.posts.maximum-size:1000}") long maximumSize,
+                                 @Value("${blog.cache.posts.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.feedCache = feedCache;
+        this.posts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    // Попадания, промахи и вытеснения
+    public CacheStats stats() {
+        return posts.stats();
+    }
+
+    @Override
+    public Optional<Post> findById(Integer id) {
+        // Пока пост грузится, invalidate того же id ждёт и удаляет уже загруженное значение
+        Post post = posts.get(id, key -> delegate.findById(key).orElse(null));
+        return Optional.ofNullable(post).map(Post::copy);
+    }
+
+    // Незакешированный пост в кеш не кладём: в нём нет первой страницы комментариев
+    @Override
+    public Optional<Post> findByIdWithoutComments(Integer id) {
+        Post post = posts.getIfPresent(id);
+        if (post != null) {
+            return Optional.of(post.copy());
+        }
+        return delegate.findByIdWithoutComments(id);
+    }
+
+    @Override
+    public Optional<String> findImagePath(int postId) {
+        Post post = posts.getIfPresent(postId);
+        if (post != null) {
+            return Optional.ofNullable(post.getImagePath());
+        }
+        return delegate.findImagePath(postId);
+    }
+
+    @Override
+    public boolean existsById(int postId) {
+        return posts.getIfPresent(postId) != null || delegate.existsById(postId);
+    }
+
+    @Override
+    public void save(Post post) {
+        boolean isNew = post.getId() == 0;
+        delegate.save(post);
+        if (isNew) {
+            // Новый пост собран целиком, его можно сразу вставить в ленту
+            if (inTransaction()) {
+                clearFeedAfterTransaction();
+            } else {
+                feedCache.put(PostSummary.of(post));
+            }
+        } else {
+            int postId = post.getId();
+            posts.invalidate(postId);
+            if (inTransaction()) {
+                invalidateAfterTransaction(postId);
+                clearFeedAfterTransaction();
+            } else {
+                feedCache.evict(PostSummary.of(post));
+            }
+        }
+    }
+
+    @Override
+    public List<PostSummary> getPosts(String search, int pageSize, int pageNumber) {
+        if (pageNumber == 1 && !inTransaction()) {
+            return feedCache.page(search, pageSize, limit -> delegate.getPosts(search, limit, 1)).getPosts();
+        }
+        return delegate.getPosts(search, pageSize, pageNumber);
+    }
+
+    @Override
+    public List<PostSummary> getPostsBefore(String search, int beforeId, int limit) {
+        return delegate.getPostsBefore(search, beforeId, limit);
+    }
+
+    @Override
+    public boolean hasMorePosts(String search, int pageSize, int pageNumber) {
+        if (pageNumber == 1 && !inTransaction()) {
+            return feedCache.page(search, pageSize, limit -> delegate.getPosts(search, limit, 1)).hasNext();
+        }
+        return delegate.hasMorePosts(search, pageSize, pageNumber);
+    }
+
+    @Override
+    public boolean updateLikes(int postId, int delta) {
+        return updateCounters(List.of(postId), () -> delegate.updateLikes(postId, delta),
+                () -> feedCache.addLikes(postId, delta));
+    }
+
+    @Override
+    public void applyLikeDeltas(Map<Integer, Integer> deltas) {
+        updateCounters(deltas.keySet(), () -> {
+            delegate.applyLikeDeltas(deltas);
+            return true;
+        }, () -> deltas.forEach(feedCache::addLikes));
+    }
+
+    // Дальние страницы комментариев не кешируются: это один запрос по индексу
+    @Override
+    public List<Comment> getComments(int postId, int afterId, int limit) {
+        return delegate.getComments(postId, afterId, limit);
+    }
+
+    @Override
+    public boolean addComment(int postId, String text) {
+        return updateCounters(List.of(postId), () -> delegate.addComment(postId, text),
+                () -> feedCache.addComments(postId, 1));
+    }
+
+    @Override
+    public boolean deleteComment(int postId, int commentId) {
+        return updateCounters(List.of(postId), () -> delegate.deleteComment(postId, commentId),
+                () -> feedCache.addComments(postId, -1));
+    }
+
+    // Текста комментариев в ленте нет, её правка не касается
+    @Override
+    public boolean editComment(int postId, int commentId, String text) {
+        try {
+            return delegate.editComment(postId, commentId, text);
+        } finally {
+            posts.invalidate(postId);
+            if (inTransaction()) {
+                invalidateAfterTransaction(postId);
+            }
+        }
+    }
+
+    @Override
+    public void deletePost(int postId) {
+        try {
+            delegate.deletePost(postId);
+        } finally {
+            posts.invalidate(postId);
+            if (inTransaction()) {
+                invalidateAfterTransaction(postId);
+                clearFeedAfterTransaction();
+            } else {
+                feedCache.remove(postId);
+            }
+        }
+    }
+
+    // Изменились лайки или комментарии: выкидываем посты из кеша постов, а в закешированных страницах ленты
+    // правим счётчики на месте (patch), если запись что-то изменила
+    private boolean updateCounters(Collection<Integer> postIds, BooleanSupplier write, Runnable patch) {
+        if (inTransaction()) {
+            try {
+                return write.getAsBoolean();
+            } finally {
+                postIds.forEach(postId -> {
+                    posts.invalidate(postId);
+                    invalidateAfterTransaction(postId);
+                });
+                clearFeedAfterTransaction();
+            }
+        }
+        feedCache.beginCountersUpdate();
+        Collection<Integer> failed = postIds;
+        try {
+            boolean updated = write.getAsBoolean();
+            failed = List.of();
+            if (updated) {
+                patch.run();
+            }
+            return updated;
+        } finally {
+            postIds.forEach(posts::invalidate);
+            feedCache.endCountersUpdate(failed);
+        }
+    }
+
+    private void invalidateAfterTransaction(int postId) {
+        // До конца транзакции другой поток ещё может закешировать старую версию, а мы сами - незакоммиченную
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                posts.invalidate(postId);
+            }
+        });
+    }
+
+    // Внутри транзакции лента читается мимо кеша, а после её завершения кеш ленты строится заново
+    private void clearFeedAfterTransaction() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                feedCache.clear();
+            }
+        });
+    }
+
+    private static boolean inTransaction() {
+        return TransactionSynchronizationManager.isSynchronizationActive();
+    }
+}
@@ -0,0 +1,307 @@
+package Blog_V2.repository;
+
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.TagSearch;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+// Первые страницы ленты по (search, pageSize). Новые и удалённые посты, лайки и комментарии вносятся в уже
+// закешированные страницы на месте, без повторного запроса страницы из базы.
+// Про запас хранится reserve постов сверх страницы, чтобы удаление не требовало дозагрузки
+@Component
+public class FeedCache {
+
+    private final Cache<FeedKey, FeedPage> pages;
+    // В каких страницах лежит пост, чтобы не перебирать весь кеш на каждый лайк. Меняется под synchronized(this)
+    private final Map<Integer, Set<FeedKey>> pagesByPost = new HashMap<>();
+    private final int reserve;
+    // Меняется при каждом изменении: страница, загруженная из базы во время изменения, в кеш не попадает
+    private long version;
+    // Записи счётчиков в базу, ещё не внесённые в кеш. Пока они есть, загруженные страницы не кешируются:
+    // страница могла уже увидеть новое значение, и прибавка учлась бы дважды
+    private int countersInFlight;
+
+    public FeedCache(@Value("${blog.cache.feed.max-size:16MB}") DataSize maxSize,
+                     @Value("${blog.cache.feed.reserve:5}") int reserve,
+                     @Value("${blog.cache.feed.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.reserve = reserve;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((FeedKey key, FeedPage page) -> page.weight())
+                .expireAfterWrite(expireAfterWrite)
+                .removalListener((FeedKey key, FeedPage page, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && key != null && page != null) {
+                        synchronized (this) {
+                            unindex(key, page);
+                        }
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public CacheStats stats() {
+        return pages.stats();
+    }
+
+    // Первые pageSize постов (копии) и признак следующей страницы; loader получает limit
+    public FeedPage page(String search, int pageSize, IntFunction<List<PostSummary>> loader) {
+        FeedKey key = new FeedKey(search == null ? "" : search.trim(), pageSize);
+        FeedPage page = pages.getIfPresent(key);
+        if (page == null) {
+            long loadedAt = currentVersion();
+            int limit = pageSize + reserve;
+            List<PostSummary> posts = loader.apply(limit);
+            page = new FeedPage(key, limit, posts, posts.size() < limit);
+            synchronized (this) {
+                if (version == loadedAt && countersInFlight == 0 && pages.asMap().putIfAbsent(key, page) == null) {
+                    index(key, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    // Новый пост: вставляем его во все страницы, куда он попадает
+    public synchronized void put(PostSummary post) {
+        version++;
+        PostSummary stored = post.copy();
+        pages.asMap().forEach((key, page) -> replace(key, page, page.with(stored)));
+    }
+
+    public synchronized void remove(int postId) {
+        version++;
+        for (FeedKey key : pagesOf(postId)) {
+            FeedPage page = cached(key);
+            if (page != null) {
+                replace(key, page, page.without(postId));
+            }
+        }
+    }
+
+    // Правка поста: страницы, где он есть или куда он теперь попадает, перечитаются при следующем запросе.
+    // Счётчики в правленом посте могли устареть, поэтому на место он не подставляется
+    public synchronized void evict(PostSummary post) {
+        version++;
+        pages.asMap().forEach((key, page) -> {
+            if ((page.contains(post.getId()) || page.accepts(post)) && pages.asMap().remove(key, page)) {
+                unindex(key, page);
+            }
+        });
+    }
+
+    // Перед записью лайков или комментариев в базу; после неё - endCountersUpdate
+    public synchronized void beginCountersUpdate() {
+        version++;
+        countersInFlight++;
+    }
+
+    // failedPostIds - посты, запись которых не удалась: неизвестно, что попало в базу, их страницы перечитаются
+    public synchronized void endCountersUpdate(Collection<Integer> failedPostIds) {
+        version++;
+        countersInFlight--;
+        for (int postId : failedPostIds) {
+            for (FeedKey key : pagesOf(postId)) {
+                FeedPage page = cached(key);
+                if (page != null && pages.asMap().remove(key, page)) {
+                    unindex(key, page);
+                }
+            }
+        }
+    }
+
+    // Лайки в базе не уходят ниже нуля, здесь так же
+    public synchronized void addLikes(int postId, int delta) {
+        patch(postId, post -> post.setLikesCount(Math.max(0, post.getLikesCount() + delta)));
+    }
+
+    public synchronized void addComments(int postId, int delta) {
+        patch(postId, post -> post.setCommentsCount(Math.max(0, post.getCommentsCount() + delta)));
+    }
+
+    public synchronized void clear() {
+        version++;
+        pages.invalidateAll();
+        pagesByPost.clear();
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private void patch(int postId, Consumer<PostSummary> change) {
+        version++;
+        for (FeedKey key : pagesOf(postId)) {
+            FeedPage page = cached(key);
+            if (page != null) {
+                replace(key, page, page.patched(postId, change));
+            }
+        }
+    }
+
+    private void replace(FeedKey key, FeedPage page, FeedPage updated) {
+        if (updated == page) {
+            return;
+        }
+        if (!updated.complete && updated.posts.size() <= key.pageSize()) {
+            // Удаления выбрали запас, а в базе есть ещё посты - перечитаем при следующем запросе
+            if (pages.asMap().remove(key, page)) {
+                unindex(key, page);
+            }
+        } else if (pages.asMap().replace(key, page, updated)) {
+            unindex(key, page);
+            index(key, updated);
+        }
+    }
+
+    // Без учёта в статистике попаданий: это не запрос ленты
+    private FeedPage cached(FeedKey key) {
+        return pages.asMap().get(key);
+    }
+
+    private List<FeedKey> pagesOf(int postId) {
+        Set<FeedKey> keys = pagesByPost.get(postId);
+        return keys != null ? new ArrayList<>(keys) : List.of();
+    }
+
+    private void index(FeedKey key, FeedPage page) {
+        for (PostSummary post : page.posts) {
+            pagesByPost.computeIfAbsent(post.getId(), id -> new HashSet<>()).add(key);
+        }
+    }
+
+    // Страница ушла из кеша или заменена: убираем её посты из индекса, кроме тех, что есть в её текущей версии
+    private void unindex(FeedKey key, FeedPage page) {
+        FeedPage current = cached(key);
+        for (PostSummary post : page.posts) {
+            if (current != null && current.contains(post.getId())) {
+                continue;
+            }
+            Set<FeedKey> keys = pagesByPost.get(post.getId());
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                pagesByPost.remove(post.getId());
+            }
+        }
+    }
+
+    private record FeedKey(String search, int pageSize) {
+    }
+
+    public static class FeedPage {
+        private final FeedKey key;
+        // Страница вместе с запасом
+        private final int limit;
+        // Посты по убыванию id
+        private final List<PostSummary> posts;
+        // В posts все подходящие посты из базы
+        private final boolean complete;
+
+        private FeedPage(FeedKey key, int limit, List<PostSummary> posts, boolean complete) {
+            this.key = key;
+            this.limit = limit;
+            this.posts = posts;
+            this.complete = complete;
+        }
+
+        public List<PostSummary> getPosts() {
+            return posts.stream()
+                    .limit(key.pageSize())
+                    .map(PostSummary::copy)
+                    .collect(Collectors.toList());
+        }
+
+        public boolean hasNext() {
+            return posts.size() > key.pageSize();
+        }
+
+        private boolean contains(int postId) {
+            return posts.stream().anyMatch(post -> post.getId() == postId);
+        }
+
+        // Пост подходит под поиск и его место в пределах страницы
+        private boolean accepts(PostSummary post) {
+            if (!TagSearch.parse(key.search()).matches(post.getTags())) {
+                return false;
+            }
+            // Пост старше последнего в неполной странице: его место где-то за её пределами
+            return complete || posts.stream().anyMatch(cached -> cached.getId() < post.getId());
+        }
+
+        private FeedPage with(PostSummary post) {
+            FeedPage page = without(post.getId());
+            if (!page.accepts(post)) {
+                return page;
+            }
+            List<PostSummary> updated = new ArrayList<>(page.posts);
+            int index = 0;
+            while (index < updated.size() && updated.get(index).getId() > post.getId()) {
+                index++;
+            }
+            updated.add(index, post);
+            boolean complete = page.complete;
+            if (updated.size() > limit) {
+                updated.remove(updated.size() - 1);
+                complete = false;
+            }
+            return new FeedPage(key, limit, updated, complete);
+        }
+
+        private FeedPage without(int postId) {
+            if (!contains(postId)) {
+                return this;
+            }
+            List<PostSummary> updated = posts.stream()
+                    .filter(post -> post.getId() != postId)
+                    .collect(Collectors.toList());
+            return new FeedPage(key, limit, updated, complete);
+        }
+
+        // Копия поста с изменёнными счётчиками; сами посты в странице не меняются, их читают без блокировки
+        private FeedPage patched(int postId, Consumer<PostSummary> change) {
+            List<PostSummary> updated = posts.stream()
+                    .map(post -> {
+                        if (post.getId() != postId) {
+                            return post;
+                        }
+                        PostSummary copy = post.copy();
+                        change.accept(copy);
+                        return copy;
+                    })
+                    .collect(Collectors.toList());
+            return new FeedPage(key, limit, updated, complete);
+        }
+
+        // Примерный размер в байтах: строки считаем по 2 байта на символ
+        private int weight() {
+            long bytes = 64 + 2L * key.search().length();
+            for (PostSummary post : posts) {
+                bytes += 96 + chars(post.getTitle()) + chars(post.getTextPreview()) + chars(post.getImagePath());
+                for (String tag : post.getTags()) {
+                    bytes += 48 + chars(tag);
+                }
+            }
+            return (int) Math.min(bytes, Integer.MAX_VALUE);
+        }
+
+        private static long chars(String value) {
+            return value != null ? 2L * value.length() : 0;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package Blog_V2.repository;
+
+import Blog_V2.dao.repository.ImageRefRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class JdbcImageRefRepository implements ImageRefRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    public JdbcImageRefRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void acquire(String imagePath) {
+        String updateSql = "UPDATE image_refs SET ref_count = ref_count + 1 WHERE image_path = ?";
+        if (jdbcTemplate.update(updateSql, imagePath) == 0) {
+            String insertSql = "INSERT INTO image_refs (image_path, ref_count) VALUES (?, 1)";
+            jdbcTemplate.update(insertSql, imagePath);
+        }
+    }
+
+    @Override
+    public boolean release(String imagePath) {
+        String updateSql = "UPDATE image_refs SET ref_count = ref_count - 1 WHERE image_path = ? AND ref_count > 0";
+        jdbcTemplate.update(updateSql, imagePath);
+        // Картинки, загруженные до подсчёта ссылок, записи не имеют и никогда не удаляются
+        String deleteSql = "DELETE FROM image_refs WHERE image_path = ? AND ref_count = 0";
+        return jdbcTemplate.update(deleteSql, imagePath) > 0;
+    }
+}
@@ -3,171 +3,315 @@ package Blog_V2.repository;
 import Blog_V2.dao.repository.PostRepository;
 import Blog_V2.model.Comment;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.TagSearch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Repository
 public class JdbcPostRepository implements PostRepository {
 
     private final JdbcTemplate jdbcTemplate;
+    private final boolean parallelDetail;
+    private final int commentsPageSize;
+    private final RowMapper<Post> postRowMapper = (rs, rowNum) -> {
+        Post post = new Post();
+        post.setId(rs.getInt("id"));
+        post.setTitle(rs.getString("title"));
+        post.setText(rs.getString("text"));
+        post.setTextPreview(rs.getString("text_preview"));
+        post.setImagePath(rs.getString("image_path"));
+        post.setLikesCount(rs.getInt("likes_count"));
+        post.setCommentsCount(rs.getInt("comments_count"));
+        return post;
+    };
+    // Лента одним запросом: превью вместо text, число комментариев и теги считает база
+    private static final String FEED_COLUMNS = "p.id, p.title, p.text_preview, p.image_path, p.likes_count, "
+            + "(SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id) AS comments_count, "
+            + "(SELECT LISTAGG(t.tag, ',') WITHIN GROUP (ORDER BY t.tag) FROM tags t WHERE t.post_id = p.id) AS tags";
+    private final RowMapper<PostSummary> summaryRowMapper = (rs, rowNum) -> {
+        PostSummary post = new PostSummary();
+        post.setId(rs.getInt("id"));
+        post.setTitle(rs.getString("title"));
+        post.setTextPreview(rs.getString("text_preview"));
+        post.setImagePath(rs.getString("image_path"));
+        post.setLikesCount(rs.getInt("likes_count"));
+        post.setCommentsCount(rs.getInt("comments_count"));
+        // Запятых в тегах не бывает: PostService.parseTags режет по ним
+        String tags = rs.getString("tags");
+        post.setTags(tags != null ? new ArrayList<>(Arrays.asList(tags.split(","))) : new ArrayList<>());
+        return post;
+    };
     public JdbcPostRepository(JdbcTemplate jdbcTemplate){
+        this(jdbcTemplate, false);
+    }
+
+    public JdbcPostRepository(JdbcTemplate jdbcTemplate, boolean parallelDetail) {
+        this(jdbcTemplate, parallelDetail, 50);
+    }
+
+    @Autowired
+    public JdbcPostRepository(JdbcTemplate jdbcTemplate,
+                              @Value("${blog.posts.parallel-detail:false}") boolean parallelDetail,
+                              @Value("${blog.posts.comments-page-size:50}") int commentsPageSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.parallelDetail = parallelDetail;
+        this.commentsPageSize = commentsPageSize;
     }
     @Override
     public void save(Post post) {
-        if (post.getId() == 0) {
+        boolean isNew = post.getId() == 0;
+        if (isNew) {
             // Вставка нового поста
-            String sql = "INSERT INTO posts (title, text, image_path, likes_count) VALUES (?, ?, ?, ?)";
+            String sql = "INSERT INTO posts (title, text, text_preview, image_path, likes_count) VALUES (?, ?, ?, ?, ?)";
             KeyHolder keyHolder = new GeneratedKeyHolder();
             jdbcTemplate.update(connection -> {
                 PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
                 ps.setString(1, post.getTitle());
                 ps.setString(2, post.getText());
-                ps.setString(3, post.getImagePath());
-                ps.setInt(4, post.getLikesCount());
+                ps.setString(3, post.getTextPreview());
+                ps.setString(4, post.getImagePath());
+                ps.setInt(5, post.getLikesCount());
                 return ps;
             }, keyHolder);
             post.setId(keyHolder.getKey().intValue());
-        } else {
-            // Обновление существующего поста
-            String sql = "UPDATE posts SET title = ?, text = ?, image_path = ?, likes_count = ? WHERE id = ?";
+        } else if (post.isDirty()) {
+            // Обновление существующего поста, только если поля строки менялись
+            String sql = "UPDATE posts SET title = ?, text = ?, text_preview = ?, image_path = ?, likes_count = ? WHERE id = ?";
             jdbcTemplate.update(sql,
                     post.getTitle(),
                     post.getText(),
+                    post.getTextPreview(),
                     post.getImagePath(),
                     post.getLikesCount(),
                     post.getId());
         }
 
         // Обновление тегов
-        updateTags(post);
+        updateTags(post, isNew);
         // Обновление комментариев
         updateComments(post);
+        post.markPersisted();
     }
 
-    private void updateTags(Post post) {
-        // Удаляем старые теги для поста
-        String deleteSql = "DELETE FROM tags WHERE post_id = ?";
-        jdbcTemplate.update(deleteSql, post.getId());
+    private void updateTags(Post post, boolean isNew) {
+        Set<String> tags = post.getTags() != null ? new LinkedHashSet<>(post.getTags()) : new LinkedHashSet<>();
+        Set<String> persisted;
+        if (isNew) {
+            persisted = new LinkedHashSet<>();
+        } else if (post.getPersistedTags() != null) {
+            persisted = new LinkedHashSet<>(post.getPersistedTags());
+        } else {
+            // Пост собран не из базы - неизвестно, что там лежит, переписываем теги целиком
+            jdbcTemplate.update("DELETE FROM tags WHERE post_id = ?", post.getId());
+            persisted = new LinkedHashSet<>();
+        }
 
-        // Затем добавляем новые теги
-        if (post.getTags() != null && !post.getTags().isEmpty()) {
-            String insertSql = "INSERT INTO tags (post_id, tag) VALUES (?, ?)";
-            for (String tag : post.getTags()) {
-                jdbcTemplate.update(insertSql, post.getId(), tag);
+        List<Object[]> removed = new ArrayList<>();
+        for (String tag : persisted) {
+            if (!tags.contains(tag)) {
+                removed.add(new Object[]{post.getId(), tag});
             }
         }
+        List<Object[]> added = new ArrayList<>();
+        for (String tag : tags) {
+            if (!persisted.contains(tag)) {
+                added.add(new Object[]{post.getId(), tag});
+            }
+        }
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM tags WHERE post_id = ? AND tag = ?", removed);
+        }
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO tags (post_id, tag) VALUES (?, ?)", added);
+        }
     }
 
     @Override
     public Optional<Post> findById(Integer id) {
-        String postSql = "SELECT * FROM posts WHERE id = ?";
+        // Внутри транзакции соединение привязано к потоку: другие потоки не увидели бы её незакоммиченных данных
+        if (parallelDetail && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return findByIdInParallel(id);
+        }
+        Optional<Post> post = findPost(id);
+        post.ifPresent(found -> {
+            found.setTags(findTags(id));
+            found.setComments(getComments(id, 0, commentsPageSize));
+            found.markPersisted();
+        });
+        return post;
+    }
+
+    // Для дальних страниц комментариев первая не нужна
+    @Override
+    public Optional<Post> findByIdWithoutComments(Integer id) {
+        Optional<Post> post = findPost(id);
+        post.ifPresent(found -> {
+            found.setTags(findTags(id));
+            found.markPersisted();
+        });
+        return post;
+    }
+
+    // Пост, теги и комментарии - три запроса на трёх соединениях одновременно: время страницы поста
+    // примерно равно самому долгому запросу, а не сумме. Запросы в виртуальных потоках не попадают
+    // в счётчик и профиль HTTP-запроса (они привязаны к потоку), только в общий blog.db.statements
+    private Optional<Post> findByIdInParallel(Integer id) {
+        Future<List<String>> tags;
+        Future<List<Comment>> comments;
+        Optional<Post> post;
+        // close() дожидается обеих задач, даже если поста нет или запрос поста упал
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            tags = executor.submit(() -> findTags(id));
+            comments = executor.submit(() -> getComments(id, 0, commentsPageSize));
+            post = findPost(id);
+        }
+        // Для несуществующего поста теги и комментарии - просто пустые списки, их не ждём отдельно
+        post.ifPresent(found -> {
+            found.setTags(result(tags));
+            found.setComments(result(comments));
+            found.markPersisted();
+        });
+        return post;
+    }
+
+    // Вместе с числом комментариев: сами комментарии грузятся страницами
+    private Optional<Post> findPost(Integer id) {
+        String sql = "SELECT p.*, (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id) AS comments_count "
+                + "FROM posts p WHERE p.id = ?";
         try {
-            Post post = jdbcTemplate.queryForObject(postSql,
-                    new Object[]{id},
-                    (rs, rowNum) -> {
-                        Post p = new Post();
-                        p.setId(rs.getInt("id"));
-                        p.setTitle(rs.getString("title"));
-                        p.setText(rs.getString("text"));
-                        p.setImagePath(rs.getString("image_path"));
-                        p.setLikesCount(rs.getInt("likes_count"));
-                        return p;
-                    }
-            );
-
-            // Загружаем теги для поста
-            if (post != null) {
-                String tagsSql = "SELECT tag FROM tags WHERE post_id = ?";
-                List<String> tags = jdbcTemplate.queryForList(tagsSql, String.class, id);
-                post.setTags(tags);
-            }
-            // Загружаем комментарии для поста
-            String commentsSql = "SELECT id, text FROM comments WHERE post_id = ?";
-            List<Comment> comments = jdbcTemplate.query(commentsSql,
-                    new Object[]{id},
-                    (rs, rowNum) -> {
-                        Comment comment = new Comment();
-                        comment.setId(rs.getInt("id"));
-                        comment.setText(rs.getString("text"));
-                        return comment;
-                    });
-            post.setComments(comments);
-
-            return Optional.ofNullable(post);
+            return Optional.of(jdbcTemplate.queryForObject(sql, postRowMapper, id));
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
         }
     }
-    private void updateComments(Post post) {
 
-        if (post.getComments() != null && !post.getComments().isEmpty()) {
-            for (Comment comment : post.getComments()) {
-                if (comment.getId() == 0) { // if new
-                    String insertSql = "INSERT INTO comments (post_id, text) VALUES (?, ?)";
-                    KeyHolder keyHolder = new GeneratedKeyHolder();
-                    jdbcTemplate.update(connection -> {
-                        PreparedStatement ps = connection.prepareStatement(insertSql, new String[]{"id"});
-                        ps.setInt(1, post.getId());
-                        ps.setString(2, comment.getText());
-                        return ps;
-                    }, keyHolder);
-                    comment.setId(keyHolder.getKey().intValue());
-                }
+    private List<String> findTags(int id) {
+        return jdbcTemplate.queryForList("SELECT tag FROM tags WHERE post_id = ?", String.class, id);
+    }
+
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
         }
     }
     @Override
-    public List<Post> getPosts(String search, int pageSize, int pageNumber) {
+    public Optional<String> findImagePath(int postId) {
+        // Только путь к картинке, без тегов и комментариев
+        String sql = "SELECT image_path FROM posts WHERE id = ?";
+        List<String> paths = jdbcTemplate.queryForList(sql, String.class, postId);
+        return paths.isEmpty() ? Optional.empty() : Optional.ofNullable(paths.get(0));
+    }
+
+    @Override
+    public boolean existsById(int postId) {
+        String sql = "SELECT 1 FROM posts WHERE id = ?";
+        return !jdbcTemplate.queryForList(sql, Integer.class, postId).isEmpty();
+    }
+
+    private void updateComments(Post post) {
+        // Вставляем только добавленные после загрузки комментарии
+        for (Comment comment : post.getNewComments()) {
+            if (comment.getId() == 0) { // if new
+                String insertSql = "INSERT INTO comments (post_id, text) VALUES (?, ?)";
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(insertSql, new String[]{"id"});
+                    ps.setInt(1, post.getId());
+                    ps.setString(2, comment.getText());
+                    return ps;
+                }, keyHolder);
+                comment.setId(keyHolder.getKey().intValue());
+            }
+        }
+    }
+    @Override
+    public List<PostSummary> getPosts(String search, int pageSize, int pageNumber) {
         // Реализация пагинации
         int offset = (pageNumber - 1) * pageSize;
-        String sql = "SELECT * FROM posts ORDER BY id DESC LIMIT ? OFFSET ?";
+        List<Object> args = new ArrayList<>();
+        String condition = tagCondition(search, args);
+        String sql = "SELECT " + FEED_COLUMNS + " FROM posts p"
+                + (condition != null ? " WHERE " + condition : "")
+                + " ORDER BY p.id DESC LIMIT ? OFFSET ?";
+        args.add(pageSize);
+        args.add(offset);
 
-        List<Post> posts = jdbcTemplate.query(sql,
-                new Object[]{pageSize, offset},
-                (rs, rowNum) -> {
-                    Post post = new Post();
-                    post.setId(rs.getInt("id"));
-                    post.setTitle(rs.getString("title"));
-                    post.setText(rs.getString("text"));
-                    post.setImagePath(rs.getString("image_path"));
-                    post.setLikesCount(rs.getInt("likes_count"));
-                    return post;
-                });
-        // tags and comment(s)
-        for (Post post : posts) {
-            String tagsSql = "SELECT tag FROM tags WHERE post_id = ?";
-            List<String> tags = jdbcTemplate.queryForList(tagsSql, String.class, post.getId());
-            post.setTags(tags);
-
-            String commentsSql = "SELECT id, text FROM comments WHERE post_id = ?";
-            List<Comment> comments = jdbcTemplate.query(commentsSql,
-                    new Object[]{post.getId()},
-                    (rs, rowNum) -> {
-                        Comment comment = new Comment();
-                        comment.setId(rs.getInt("id"));
-                        comment.setText(rs.getString("text"));
-                        return comment;
-                    });
-            post.setComments(comments);
-        }
+        return jdbcTemplate.query(sql,
+                args.toArray(),
+                summaryRowMapper);
+    }
+    @Override
+    public List<PostSummary> getPostsBefore(String search, int beforeId, int limit) {
+        // Keyset-пагинация: поиск по первичному ключу вместо OFFSET
+        List<Object> args = new ArrayList<>();
+        args.add(beforeId);
+        String condition = tagCondition(search, args);
+        String sql = "SELECT " + FEED_COLUMNS + " FROM posts p WHERE p.id < ?"
+                + (condition != null ? " AND " + condition : "")
+                + " ORDER BY p.id DESC LIMIT ?";
+        args.add(limit);
 
-        return posts;
+        return jdbcTemplate.query(sql,
+                args.toArray(),
+                summaryRowMapper);
+    }
+    // Фильтр по тегам через индекс tags(tag, post_id); параметры дописываются в args
+    private String tagCondition(String search, List<Object> args) {
+        TagSearch tagSearch = TagSearch.parse(search);
+        if (tagSearch.isEmpty()) {
+            return null;
+        }
+        List<String> tags = tagSearch.getTags();
+        args.addAll(tags);
+        String condition = "p.id IN (SELECT post_id FROM tags WHERE tag IN ("
+                + String.join(", ", Collections.nCopies(tags.size(), "?")) + ")";
+        if (tagSearch.isMatchAll()) {
+            condition += " GROUP BY post_id HAVING COUNT(DISTINCT tag) = ?";
+            args.add(tags.size());
+        }
+        return condition + ")";
     }
     @Override
     public boolean hasMorePosts(String search, int pageSize, int pageNumber) {
         int offset = pageNumber * pageSize;
-        String sql = "SELECT 1 FROM posts LIMIT 1 OFFSET ?";
+        List<Object> args = new ArrayList<>();
+        String condition = tagCondition(search, args);
+        String sql = "SELECT 1 FROM posts p"
+                + (condition != null ? " WHERE " + condition : "")
+                + " LIMIT 1 OFFSET ?";
+        args.add(offset);
         try {
-            jdbcTemplate.queryForObject(sql, Integer.class, offset);
+            jdbcTemplate.queryForObject(sql, Integer.class, args.toArray());
             return true;
         } catch (EmptyResultDataAccessException e) {
             return false;
@@ -175,27 +319,57 @@ public class JdbcPostRepository implements PostRepository {
     }
 
     @Override
-    public void deleteComment(int postId, int commentId) {
+    public boolean updateLikes(int postId, int delta) {
+        // Атомарно в базе, без чтения поста: параллельные лайки не теряются
+        String sql = "UPDATE posts SET likes_count = GREATEST(likes_count + ?, 0) WHERE id = ?";
+        return jdbcTemplate.update(sql, delta, postId) > 0;
+    }
+
+    @Override
+    public void applyLikeDeltas(Map<Integer, Integer> deltas) {
+        String sql = "UPDATE posts SET likes_count = GREATEST(likes_count + ?, 0) WHERE id = ?";
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        deltas.forEach((postId, delta) -> batchArgs.add(new Object[]{delta, postId}));
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    // Keyset по индексу comments(post_id, id): цена страницы не зависит от её номера и длины обсуждения
+    @Override
+    public List<Comment> getComments(int postId, int afterId, int limit) {
+        String sql = "SELECT id, text FROM comments WHERE post_id = ? AND id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql,
+                (rs, rowNum) -> {
+                    Comment comment = new Comment();
+                    comment.setId(rs.getInt("id"));
+                    comment.setText(rs.getString("text"));
+                    return comment;
+                },
+                postId, afterId, limit);
+    }
+
+    @Override
+    public boolean addComment(int postId, String text) {
+        // Проверка существования поста и вставка одним запросом
+        String sql = "INSERT INTO comments (post_id, text) SELECT id, ? FROM posts WHERE id = ?";
+        return jdbcTemplate.update(sql, text, postId) > 0;
+    }
+
+    @Override
+    public boolean deleteComment(int postId, int commentId) {
         String sql = "DELETE FROM comments WHERE id = ? AND post_id = ?";
-        jdbcTemplate.update(sql, commentId, postId);
+        return jdbcTemplate.update(sql, commentId, postId) > 0;
     }
 
     @Override
-    public void editComment(int postId, int commentId, String text) {
+    public boolean editComment(int postId, int commentId, String text) {
         String sql = "UPDATE comments SET text = ? WHERE id = ? AND post_id = ?";
-        jdbcTemplate.update(sql, text, commentId, postId);
+        return jdbcTemplate.update(sql, text, commentId, postId) > 0;
     }
 
     @Override
     public void deletePost(int postId) {
-        String deleteTagsSql = "DELETE FROM tags WHERE post_id = ?";
-        jdbcTemplate.update(deleteTagsSql, postId);
-
-        String deleteCommentsSql = "DELETE FROM comments WHERE post_id = ?";
-        jdbcTemplate.update(deleteCommentsSql, postId);
-
-        String deletePostSql = "DELETE FROM posts WHERE id = ?";
-        jdbcTemplate.update(deletePostSql, postId);
+        // Теги и комментарии удаляет база: ON DELETE CASCADE по индексам на post_id
+        jdbcTemplate.update("DELETE FROM posts WHERE id = ?", postId);
     }
 
 }
@@ -0,0 +1,179 @@
+package Blog_V2.repository;
+
+import Blog_V2.dao.repository.PostRepository;
+import Blog_V2.metrics.MethodTimers;
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Время каждого метода репозитория так, как его видит сервис: вместе с попаданиями в кеш.
+// Таймер blog.repository{method=...}
+@Repository
+@Primary
+public class MeteredPostRepository implements PostRepository {
+
+    private final CachingPostRepository delegate;
+    private final MethodTimers timers;
+
+    public MeteredPostRepository(CachingPostRepository delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.timers = new MethodTimers(registry, "blog.repository", PostRepository.class);
+    }
+
+    @Override
+    public void save(Post post) {
+        long start = System.nanoTime();
+        try {
+            delegate.save(post);
+        } finally {
+            timers.record("save", start);
+        }
+    }
+
+    @Override
+    public Optional<Post> findById(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findById(id);
+        } finally {
+            timers.record("findById", start);
+        }
+    }
+
+    @Override
+    public Optional<Post> findByIdWithoutComments(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByIdWithoutComments(id);
+        } finally {
+            timers.record("findByIdWithoutComments", start);
+        }
+    }
+
+    @Override
+    public Optional<String> findImagePath(int postId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findImagePath(postId);
+        } finally {
+            timers.record("findImagePath", start);
+        }
+    }
+
+    @Override
+    public boolean existsById(int postId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.existsById(postId);
+        } finally {
+            timers.record("existsById", start);
+        }
+    }
+
+    @Override
+    public List<PostSummary> getPosts(String search, int pageSize, int pageNumber) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getPosts(search, pageSize, pageNumber);
+        } finally {
+            timers.record("getPosts", start);
+        }
+    }
+
+    @Override
+    public List<PostSummary> getPostsBefore(String search, int beforeId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getPostsBefore(search, beforeId, limit);
+        } finally {
+            timers.record("getPostsBefore", start);
+        }
+    }
+
+    @Override
+    public boolean hasMorePosts(String search, int pageSize, int pageNumber) {
+        long start = System.nanoTime();
+        try {
+            return delegate.hasMorePosts(search, pageSize, pageNumber);
+        } finally {
+            timers.record("hasMorePosts", start);
+        }
+    }
+
+    @Override
+    public boolean updateLikes(int postId, int delta) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateLikes(postId, delta);
+        } finally {
+            timers.record("updateLikes", start);
+        }
+    }
+
+    @Override
+    public void applyLikeDeltas(Map<Integer, Integer> deltas) {
+        long start = System.nanoTime();
+        try {
+            delegate.applyLikeDeltas(deltas);
+        } finally {
+            timers.record("applyLikeDeltas", start);
+        }
+    }
+
+    @Override
+    public List<Comment> getComments(int postId, int afterId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getComments(postId, afterId, limit);
+        } finally {
+            timers.record("getComments", start);
+        }
+    }
+
+    @Override
+    public boolean addComment(int postId, String text) {
+        long start = System.nanoTime();
+        try {
+            return delegate.addComment(postId, text);
+        } finally {
+            timers.record("addComment", start);
+        }
+    }
+
+    @Override
+    public boolean deleteComment(int postId, int commentId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteComment(postId, commentId);
+        } finally {
+            timers.record("deleteComment", start);
+        }
+    }
+
+    @Override
+    public boolean editComment(int postId, int commentId, String text) {
+        long start = System.nanoTime();
+        try {
+            return delegate.editComment(postId, commentId, text);
+        } finally {
+            timers.record("editComment", start);
+        }
+    }
+
+    @Override
+    public void deletePost(int postId) {
+        long start = System.nanoTime();
+        try {
+            delegate.deletePost(postId);
+        } finally {
+            timers.record("deletePost", start);
+        }
+    }
+}
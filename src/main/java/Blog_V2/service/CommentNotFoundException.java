@@ -0,0 +1,12 @@
+package Blog_V2.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// У поста нет комментария с таким id (или нет самого поста)
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class CommentNotFoundException extends RuntimeException {
+    public CommentNotFoundException() {
+        super("Comment not found");
+    }
+}
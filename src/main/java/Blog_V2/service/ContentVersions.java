@@ -0,0 +1,45 @@
+package Blog_V2.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Версии содержимого страниц: PostService поднимает их после каждого изменения.
+// Лента показывает лайки и комментарии всех постов, поэтому её версия меняется при любом изменении
+@Component
+public class ContentVersions {
+
+    // Время запуска: после рестарта версии начинаются заново и не должны совпасть со старыми ETag
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong feedVersion = new AtomicLong();
+    // Версия постов без своей записи. Удаление поднимает её, чтобы ETag, выданный до удаления, больше не совпал
+    private final AtomicLong deletedVersion = new AtomicLong();
+    private final Map<Integer, Long> postVersions = new ConcurrentHashMap<>();
+
+    public void postChanged(int postId) {
+        long version = feedVersion.incrementAndGet();
+        postVersions.merge(postId, version, Math::max);
+    }
+
+    // Запись удалённого поста больше не нужна: так карта не растёт с каждым удалением
+    public void postDeleted(int postId) {
+        long version = feedVersion.incrementAndGet();
+        deletedVersion.accumulateAndGet(version, Math::max);
+        postVersions.remove(postId);
+    }
+
+    public long feedVersion() {
+        return feedVersion.get();
+    }
+
+    public long postVersion(int postId) {
+        Long version = postVersions.get(postId);
+        return version != null ? version : deletedVersion.get();
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,127 @@
+package Blog_V2.service;
+
+import Blog_V2.dao.repository.PostRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Буфер лайков (blog.likes.buffered=true): клики копятся в LongAdder по постам
+// и пачкой записываются в базу по расписанию или по порогу, а не одним UPDATE на клик
+@Component
+public class LikeBuffer {
+
+    private final PostRepository postRepository;
+    private final boolean enabled;
+    private final long flushThreshold;
+
+    private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    // Дельты, которые сейчас пишутся в базу: учитываются при чтении, пока запись не завершилась
+    private final Map<Integer, Long> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder pendingClicks = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public LikeBuffer(PostRepository postRepository,
+                      @Value("${blog.likes.buffered:false}") boolean enabled,
+                      @Value("${blog.likes.flush-threshold:1000}") long flushThreshold) {
+        this.postRepository = postRepository;
+        this.enabled = enabled;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // false - поста нет. Существование проверяется, только когда у поста ещё нет счётчика,
+    // иначе лайки случайных id оставляли бы в буфере записи, которые никогда не запишутся
+    public boolean add(int postId, int delta) {
+        if (!pending.containsKey(postId) && !postRepository.existsById(postId)) {
+            return false;
+        }
+        addToLive(postId, delta);
+        pendingClicks.increment();
+        if (pendingClicks.sum() >= flushThreshold && flushLock.tryLock()) {
+            try {
+                flushPending();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    // flush убирает счётчик из pending до того, как его обнулить. Если счётчик убрали, пока сюда добавляли,
+    // всё, что flush не успел забрать, переносится в новый: каждый клик забирает ровно один sumThenReset
+    private void addToLive(int postId, long delta) {
+        while (delta != 0) {
+            LongAdder adder = pending.computeIfAbsent(postId, id -> new LongAdder());
+            adder.add(delta);
+            if (pending.get(postId) == adder) {
+                return;
+            }
+            delta = adder.sumThenReset();
+        }
+    }
+
+    // Ещё не записанная в базу дельта лайков поста
+    public int pendingDelta(int postId) {
+        long delta = inFlight.getOrDefault(postId, 0L);
+        LongAdder adder = pending.get(postId);
+        if (adder != null) {
+            delta += adder.sum();
+        }
+        return (int) delta;
+    }
+
+    @Scheduled(fixedDelayString = "${blog.likes.flush-interval-ms:1000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void flushPending() {
+        pendingClicks.reset();
+        Map<Integer, Integer> deltas = new HashMap<>();
+        // Записанные посты убираются из pending, чтобы карта не росла со всеми когда-либо лайкнутыми id.
+        // Опоздавший add сам перенесёт свой клик в новый счётчик (addToLive)
+        pending.forEach((postId, adder) -> {
+            pending.remove(postId, adder);
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                inFlight.merge(postId, delta, Long::sum);
+                deltas.put(postId, (int) delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            postRepository.applyLikeDeltas(deltas);
+        } catch (RuntimeException e) {
+            // Возвращаем дельты в буфер, чтобы лайки записались при следующей попытке
+            deltas.forEach(this::addToLive);
+            throw e;
+        } finally {
+            deltas.keySet().forEach(inFlight::remove);
+        }
+    }
+}
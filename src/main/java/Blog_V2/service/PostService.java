@@ -2,108 +2,249 @@ package Blog_V2.service;
 
 
 import Blog_V2.dao.repository.PostRepository;
+import Blog_V2.dao.storage.ImageStorage;
+import Blog_V2.metrics.MethodTimers;
 import Blog_V2.model.Comment;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.Page;
 import Blog_V2.model.Paging;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.StoredImage;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+// Методы, которые вызывает контроллер, замеряются таймером blog.service{method=...}.
+// Таймеры создаются при старте, на вызов - только nanoTime() и поиск в HashMap.
+// Вспомогательные методы (createPaging, saveImage, savePost) не замеряются, поэтому вложенные вызовы не считаются дважды
 @Service
 public class PostService {
 
+    private static final String[] TIMED_METHODS = {
+            "getPosts", "getPostsBefore", "getComments", "addComment", "deleteComment", "editComment",
+            "deletePost", "updateLikes", "getPostById", "getPostWithoutComments", "getImageResource",
+            "createPost", "updatePost"};
+
     private final PostRepository postRepository;
+    private final LikeBuffer likeBuffer;
+    private final ImageStorage imageStorage;
+    private final ContentVersions contentVersions;
+    private final MethodTimers timers;
 
-    public PostService(PostRepository postRepository) {
+    public PostService(PostRepository postRepository, LikeBuffer likeBuffer, ImageStorage imageStorage,
+                       ContentVersions contentVersions, MeterRegistry meterRegistry) {
         this.postRepository = postRepository;
+        this.likeBuffer = likeBuffer;
+        this.imageStorage = imageStorage;
+        this.contentVersions = contentVersions;
+        this.timers = new MethodTimers(meterRegistry, "blog.service", TIMED_METHODS);
     }
 
-    public List<Post> getPosts(String search, int pageSize, int pageNumber) {
-        return postRepository.getPosts(search, pageSize, pageNumber);
+    public List<PostSummary> getPosts(String search, int pageSize, int pageNumber) {
+        long start = System.nanoTime();
+        try {
+            return mergePendingLikes(postRepository.getPosts(search, pageSize, pageNumber));
+        } finally {
+            timers.record("getPosts", start);
+        }
+    }
+    // У базы просим на один пост больше pageSize: по лишнему видно, есть ли следующая страница, без отдельного запроса
+    public Page<PostSummary> getPostsBefore(String search, int before, int pageSize) {
+        long start = System.nanoTime();
+        try {
+            List<PostSummary> loaded = postRepository.getPostsBefore(search, before, pageSize + 1);
+            List<PostSummary> posts = firstPage(loaded, pageSize);
+            Paging paging = new Paging();
+            paging.setPageSize(pageSize);
+            paging.setBefore(before);
+            paging.setHasPrevious(true);
+            paging.setHasNext(loaded.size() > pageSize);
+            if (!posts.isEmpty()) {
+                paging.setNextBefore(posts.get(posts.size() - 1).getId());
+            }
+            return new Page<>(mergePendingLikes(posts), paging);
+        } finally {
+            timers.record("getPostsBefore", start);
+        }
+    }
+    // Как и getPostsBefore, на один комментарий больше pageSize
+    public Page<Comment> getComments(int postId, int after, int pageSize) {
+        long start = System.nanoTime();
+        try {
+            List<Comment> loaded = postRepository.getComments(postId, after, pageSize + 1);
+            List<Comment> comments = firstPage(loaded, pageSize);
+            Paging paging = new Paging();
+            paging.setPageSize(pageSize);
+            paging.setAfter(after);
+            paging.setHasPrevious(true);
+            paging.setHasNext(loaded.size() > pageSize);
+            if (paging.hasNext()) {
+                paging.setNextAfter(comments.get(comments.size() - 1).getId());
+            }
+            return new Page<>(comments, paging);
+        } finally {
+            timers.record("getComments", start);
+        }
+    }
+    // Копия без лишнего элемента: список из репозитория может быть общим (кеш), его не трогаем
+    private static <T> List<T> firstPage(List<T> loaded, int pageSize) {
+        return new ArrayList<>(loaded.subList(0, Math.min(pageSize, loaded.size())));
     }
     public void addComment(int postId, String text) {
-        Post post = getPostById(postId);
-        Comment comment = new Comment(text);
-        post.addComment(comment);
-        postRepository.save(post);
+        long start = System.nanoTime();
+        try {
+            if (!postRepository.addComment(postId, text)) {
+                throw new RuntimeException("Post not found");
+            }
+            contentVersions.postChanged(postId);
+        } finally {
+            timers.record("addComment", start);
+        }
     }
     public void deleteComment(int postId, int commentId) {
-        Post post = getPostById(postId);
-        post.getComments().removeIf(comment -> comment.getId() == commentId);
-        postRepository.deleteComment(postId,commentId);
-        postRepository.save(post);
+        long start = System.nanoTime();
+        try {
+            // Повторное удаление (двойной клик, повтор формы) - не ошибка, но и страница не менялась
+            if (postRepository.deleteComment(postId, commentId)) {
+                contentVersions.postChanged(postId);
+            }
+        } finally {
+            timers.record("deleteComment", start);
+        }
     }
     public void editComment(int postId, int commentId, String text) {
-        Post post = getPostById(postId);
-        post.getComments().stream()
-                .filter(comment -> comment.getId() == commentId)
-                .findFirst()
-                .ifPresent(comment -> {
-                    comment.setText(text);
-                    postRepository.editComment(postId, commentId, text);
-                });
+        long start = System.nanoTime();
+        try {
+            if (!postRepository.editComment(postId, commentId, text)) {
+                throw new CommentNotFoundException();
+            }
+            contentVersions.postChanged(postId);
+        } finally {
+            timers.record("editComment", start);
+        }
     }
     public void deletePost(int postId){
-        postRepository.deletePost(postId);
+        long start = System.nanoTime();
+        try {
+            Optional<String> imagePath = postRepository.findImagePath(postId);
+            postRepository.deletePost(postId);
+            contentVersions.postDeleted(postId);
+            imagePath.ifPresent(this::releaseImage);
+        } finally {
+            timers.record("deletePost", start);
+        }
     }
     public boolean hasMorePosts(String search, int pageSize, int pageNumber) {
         return postRepository.hasMorePosts(search, pageSize, pageNumber);
     }
     public void savePost(Post post) {
         postRepository.save(post);
+        contentVersions.postChanged(post.getId());
     }
     public void updateLikes(int postId, boolean like) {
-        Post post = getPostById(postId);
-        int currentLikes = post.getLikesCount();
-        int newLikes = like ? currentLikes + 1 : currentLikes - 1;
-
-        post.setLikesCount(Math.max(newLikes, 0));
-
-        postRepository.save(post);
+        long start = System.nanoTime();
+        try {
+            int delta = like ? 1 : -1;
+            if (likeBuffer.isEnabled()) {
+                // Отложенные лайки сразу видны на страницах, так что версия меняется уже сейчас
+                if (!likeBuffer.add(postId, delta)) {
+                    throw new RuntimeException("Post not found");
+                }
+            } else if (!postRepository.updateLikes(postId, delta)) {
+                throw new RuntimeException("Post not found");
+            }
+            contentVersions.postChanged(postId);
+        } finally {
+            timers.record("updateLikes", start);
+        }
     }
     public Post getPostById(int id) {
+        long start = System.nanoTime();
+        try {
+            Post post = findPost(id);
+            mergePendingLikes(post);
+            return post;
+        } finally {
+            timers.record("getPostById", start);
+        }
+    }
+    // Для страниц комментариев после первой: их грузит getComments
+    public Post getPostWithoutComments(int id) {
+        long start = System.nanoTime();
+        try {
+            Post post = postRepository.findByIdWithoutComments(id).orElseThrow(()
+                    -> new RuntimeException("Post not found"));
+            mergePendingLikes(post);
+            return post;
+        } finally {
+            timers.record("getPostWithoutComments", start);
+        }
+    }
+    // Пост в том виде, как он лежит в базе: его можно сохранять, не записав буферизованные лайки дважды
+    private Post findPost(int id) {
         return postRepository.findById(id).orElseThrow(()
                 -> new RuntimeException("Post not found"));
     }
-    public byte[] getImageByPostId(int id) throws IOException {
-        Post post = getPostById(id);
-        if (post == null || post.getImagePath() == null) {
-            return null;
+    // Добавляем лайки, которые ещё лежат в буфере, чтобы пользователь сразу видел свой клик
+    private List<PostSummary> mergePendingLikes(List<PostSummary> posts) {
+        if (likeBuffer.isEnabled()) {
+            posts.forEach(post -> post.setLikesCount(Math.max(post.getLikesCount() + likeBuffer.pendingDelta(post.getId()), 0)));
         }
-        String fileName = post.getImagePath().replace("/images/", "");
-        Path imagePath = Paths.get("uploads/images/" + fileName);
-
-        if (!Files.exists(imagePath)) {
-            return null;
+        return posts;
+    }
+    private void mergePendingLikes(Post post) {
+        if (likeBuffer.isEnabled()) {
+            post.setLikesCount(Math.max(post.getLikesCount() + likeBuffer.pendingDelta(post.getId()), 0));
+        }
+    }
+    // Файл картинки поста без чтения в память; null, если картинки нет.
+    // Для size отдаётся уменьшенная копия, а пока её нет - оригинал
+    public StoredImage getImageResource(int id, ImageSize size) {
+        long start = System.nanoTime();
+        try {
+            return postRepository.findImagePath(id)
+                    .map(imagePath -> imageStorage.load(imagePath, size))
+                    .orElse(null);
+        } finally {
+            timers.record("getImageResource", start);
         }
-
-        return Files.readAllBytes(imagePath);
     }
     public int createPost(
             String title,
             String text,
             String tags,
             MultipartFile image) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String imagePath = saveImage(image);
 
-        String imagePath = saveImage(image);
-
-        Post post = new Post();
-        post.setTitle(title);
-        post.setText(text);
-        post.setImagePath(imagePath);
-        post.setTags(parseTags(tags));
-        post.setLikesCount(0);
+            Post post = new Post();
+            post.setTitle(title);
+            post.setText(text);
+            post.setImagePath(imagePath);
+            post.setTags(parseTags(tags));
+            post.setLikesCount(0);
 
-        postRepository.save(post);
-        return post.getId();
+            try {
+                postRepository.save(post);
+            } catch (RuntimeException e) {
+                releaseImage(imagePath);
+                throw e;
+            }
+            contentVersions.postChanged(post.getId());
+            return post.getId();
+        } finally {
+            timers.record("createPost", start);
+        }
     }
 
     public String saveImage(MultipartFile image) throws IOException {
@@ -111,31 +252,35 @@ public class PostService {
             return null;
         }
 
-        String uploadDir = "uploads/images/";
-        Path uploadPath = Paths.get(uploadDir);
-
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+        try (InputStream content = image.getInputStream()) {
+            return imageStorage.store(content);
         }
-
-        String fileName = System.currentTimeMillis() + "_" + image.getOriginalFilename();
-        Path filePath = uploadPath.resolve(fileName);
-        Files.copy(image.getInputStream(), filePath);
-
-        return "/images/" + fileName;
     }
 
     public void updatePost(int id, String title, String text, String tags, MultipartFile image) throws IOException {
-        Post post = getPostById(id);
-        post.setTitle(title);
-        post.setText(text);
-        post.setTags(parseTags(tags));
+        long start = System.nanoTime();
+        try {
+            Post post = findPost(id);
+            post.setTitle(title);
+            post.setText(text);
+            post.setTags(parseTags(tags));
 
-        if (image != null && !image.isEmpty()) {
-            String imagePath = saveImage(image);
-            post.setImagePath(imagePath);
+            String replacedImagePath = null;
+            if (image != null && !image.isEmpty()) {
+                String imagePath = saveImage(image);
+                replacedImagePath = post.getImagePath();
+                post.setImagePath(imagePath);
+            }
+            savePost(post);
+            releaseImage(replacedImagePath);
+        } finally {
+            timers.record("updatePost", start);
+        }
+    }
+    private void releaseImage(String imagePath) {
+        if (imagePath != null) {
+            imageStorage.release(imagePath);
         }
-        savePost(post);
     }
     public Paging createPaging(String search, int pageSize, int pageNumber) {
         Paging paging = new Paging();
@@ -145,6 +290,17 @@ public class PostService {
         paging.setHasPrevious(pageNumber > 1);
         return paging;
     }
+    // Первая страница комментариев уже загружена вместе с постом
+    public Paging createCommentPaging(Post post) {
+        List<Comment> comments = post.getComments();
+        Paging paging = new Paging();
+        paging.setPageSize(comments.size());
+        paging.setHasNext(post.getCommentsCount() > comments.size() && !comments.isEmpty());
+        if (paging.hasNext()) {
+            paging.setNextAfter(comments.get(comments.size() - 1).getId());
+        }
+        return paging;
+    }
     private List<String> parseTags(String tagsString) {
         if (tagsString == null || tagsString.trim().isEmpty()) {
             return new ArrayList<>();
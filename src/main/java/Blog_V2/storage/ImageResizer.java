@@ -0,0 +1,202 @@
+package Blog_V2.storage;
+
+import Blog_V2.model.ImageSize;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Готовит уменьшенные копии загруженных картинок в фоне, на ограниченном пуле потоков.
+// Пока копии нет, отдаётся оригинал. Размер картинки проверяется по заголовку до декодирования: файл
+// в несколько килобайт может объявить 100000x100000 пикселей, и декодирование целиком исчерпало бы память
+@Component
+public class ImageResizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageResizer.class);
+
+    private final ThreadPoolExecutor executor;
+    private final long maxPixels;
+
+    public ImageResizer(@Value("${blog.images.resize-threads:2}") int threads,
+                        @Value("${blog.images.resize-queue-capacity:100}") int queueCapacity,
+                        @Value("${blog.images.max-pixels:50000000}") long maxPixels) {
+        this.maxPixels = maxPixels;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-resizer-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static Path variantPath(Path original, ImageSize size) {
+        return original.resolveSibling(size.fileName(original.getFileName().toString()));
+    }
+
+    public CompletableFuture<Void> createVariants(Path original) {
+        try {
+            return CompletableFuture.runAsync(() -> resize(original), executor);
+        } catch (RejectedExecutionException e) {
+            // Очередь полна: картинка будет отдаваться в исходном размере
+            log.warn("Image resize queue is full, skipping variants for {}", original);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // Появится ли (или уже есть) у картинки копия размера size. Читается только заголовок файла.
+    // false - копии не будет: картинка не больше size, слишком велика или не читается
+    public boolean createsVariant(Path original, ImageSize size) {
+        if (formatName(original) == null) {
+            return false;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            ImageReader reader = reader(input);
+            if (reader == null) {
+                return false;
+            }
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                return withinLimit(width, height) && scale(size, width, height) < 1.0;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Не знаем - считаем, что копия ещё будет
+            return true;
+        }
+    }
+
+    private void resize(Path original) {
+        String format = formatName(original);
+        if (format == null) {
+            return;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            ImageReader reader = reader(input);
+            if (reader == null) {
+                return; // не картинка
+            }
+            try {
+                resize(original, format, reader);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to create image variants for {}", original, e);
+        }
+    }
+
+    private static ImageReader reader(ImageInputStream input) {
+        Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+        if (readers == null || !readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    private boolean withinLimit(int width, int height) {
+        return (long) width * height <= maxPixels;
+    }
+
+    private void resize(Path original, String format, ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if (!withinLimit(width, height)) {
+            log.warn("Image {} is {}x{}, over the {} pixel limit, skipping variants", original, width, height, maxPixels);
+            return;
+        }
+        double largestScale = 0;
+        for (ImageSize size : ImageSize.values()) {
+            double scale = scale(size, width, height);
+            if (scale < 1.0) {
+                largestScale = Math.max(largestScale, scale);
+            }
+        }
+        if (largestScale == 0) {
+            return; // оригинал и так не больше нужного
+        }
+        // Декодируем сразу с прореживанием: в памяти не больше пикселей, чем нужно самой крупной копии
+        int step = Math.max(1, (int) (1 / largestScale));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage image = reader.read(0, param);
+        for (ImageSize size : ImageSize.values()) {
+            double scale = scale(size, width, height);
+            if (scale >= 1.0) {
+                continue;
+            }
+            BufferedImage scaled = scale(image,
+                    Math.max(1, (int) Math.round(width * scale)),
+                    Math.max(1, (int) Math.round(height * scale)));
+            Path target = variantPath(original, size);
+            // Пишем во временный файл и переименовываем, чтобы не отдать недописанную копию
+            Path tmp = Files.createTempFile(original.getParent(), ".resize-", ".tmp");
+            try {
+                if (!ImageIO.write(scaled, format, tmp.toFile())) {
+                    continue;
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static double scale(ImageSize size, int width, int height) {
+        return Math.min((double) size.getMaxWidth() / width, (double) size.getMaxHeight() / height);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static String formatName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String suffix = name.substring(dot + 1).toLowerCase();
+        return ImageIO.getImageWritersBySuffix(suffix).hasNext() ? suffix : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,12 @@
+package Blog_V2.storage;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Загруженный файл не является картинкой поддерживаемого формата
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidImageException extends RuntimeException {
+    public InvalidImageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,166 @@
+package Blog_V2.storage;
+
+import Blog_V2.dao.repository.ImageRefRepository;
+import Blog_V2.dao.storage.ImageStorage;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.ImageType;
+import Blog_V2.model.StoredImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Картинки хранятся по SHA-256 содержимого: ab/cd/abcd....jpg.
+// Одинаковые загрузки лежат на диске один раз, ссылки на них считаются в image_refs
+@Component
+public class LocalImageStorage implements ImageStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalImageStorage.class);
+    private static final String URL_PREFIX = "/images/";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final long maxFileSize;
+    private final ImageRefRepository imageRefRepository;
+    private final ImageResizer imageResizer;
+    // Запись файла и изменение счётчика ссылок не должны пересекаться с удалением той же картинки
+    private final Object[] locks = new Object[64];
+
+    public LocalImageStorage(@Value("${blog.images.dir:uploads/images}") String root,
+                             @Value("${blog.images.max-file-size:10MB}") DataSize maxFileSize,
+                             ImageRefRepository imageRefRepository,
+                             ImageResizer imageResizer) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.imageRefRepository = imageRefRepository;
+        this.imageResizer = imageResizer;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public String store(InputStream content) throws IOException {
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, ".upload-", ".tmp");
+        try {
+            // Один проход по потоку: формат, лимит размера и хеш считаются по ходу записи во временный файл
+            MessageDigest digest = sha256();
+            ImageType type;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                byte[] header = content.readNBytes(ImageType.HEADER_LENGTH);
+                type = ImageType.detect(header);
+                if (type == null) {
+                    throw new InvalidImageException("Unsupported image format");
+                }
+                out.write(header);
+                long size = header.length;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxFileSize) {
+                        throw new MaxUploadSizeExceededException(maxFileSize);
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String relative = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + type.getExtension();
+            String imagePath = URL_PREFIX + relative;
+            Path target = root.resolve(relative);
+
+            synchronized (lockFor(imagePath)) {
+                if (!Files.exists(target)) {
+                    Files.createDirectories(target.getParent());
+                    // Файл появляется под своим именем только целиком
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    imageResizer.createVariants(target);
+                }
+                imageRefRepository.acquire(imagePath);
+            }
+            return imagePath;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public StoredImage load(String imagePath, ImageSize size) {
+        Path path = resolve(imagePath);
+        if (path == null) {
+            return null;
+        }
+        String version = path.getFileName().toString();
+        if (size != null) {
+            Path variant = ImageResizer.variantPath(path, size);
+            if (Files.isRegularFile(variant)) {
+                return new StoredImage(new FileSystemResource(variant), version, true);
+            }
+        }
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        // Оригинал вместо копии окончателен, только если копии этого размера не будет вовсе
+        boolean immutable = size == null || !imageResizer.createsVariant(path, size);
+        return new StoredImage(new FileSystemResource(path), version, immutable);
+    }
+
+    @Override
+    public void release(String imagePath) {
+        Path path = resolve(imagePath);
+        if (path == null) {
+            return;
+        }
+        synchronized (lockFor(imagePath)) {
+            if (!imageRefRepository.release(imagePath)) {
+                return;
+            }
+            try {
+                for (ImageSize size : ImageSize.values()) {
+                    Files.deleteIfExists(ImageResizer.variantPath(path, size));
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Не удалось убрать файл - останется на диске, на работу блога это не влияет
+                log.warn("Failed to delete orphaned image {}", path, e);
+            }
+        }
+    }
+
+    // Путь на диске для /images/...; null для путей вне каталога картинок
+    private Path resolve(String imagePath) {
+        if (imagePath == null || !imagePath.startsWith(URL_PREFIX)) {
+            return null;
+        }
+        Path path = root.resolve(imagePath.substring(URL_PREFIX.length())).normalize();
+        return path.startsWith(root) ? path : null;
+    }
+
+    private Object lockFor(String imagePath) {
+        return locks[Math.floorMod(imagePath.hashCode(), locks.length)];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
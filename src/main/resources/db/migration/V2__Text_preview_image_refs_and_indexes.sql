@@ -0,0 +1,14 @@
+-- То, что schema.sql добавлял к исходной схеме. В базах, созданных его поздними версиями, всё это уже есть
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS text_preview VARCHAR(255);
+UPDATE posts SET text_preview = CASE WHEN CHAR_LENGTH(text) > 100 THEN SUBSTRING(text, 1, 100) || '...' ELSE text END
+WHERE text_preview IS NULL AND text IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_tags_tag_post_id ON tags(tag, post_id);
+-- Страницы комментариев поста: WHERE post_id = ? AND id > ? ORDER BY id
+CREATE INDEX IF NOT EXISTS idx_comments_post_id_id ON comments(post_id, id);
+
+-- Картинки, загруженные до появления image_refs, остаются без записи и никогда не удаляются
+CREATE TABLE IF NOT EXISTS image_refs (
+                                          image_path VARCHAR(255) PRIMARY KEY,
+                                          ref_count INT NOT NULL
+);
@@ -1,7 +1,17 @@
 package Blog_V2.controller;
 
+import Blog_V2.model.Comment;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.Page;
+import Blog_V2.model.Paging;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.StoredImage;
+import Blog_V2.service.CommentNotFoundException;
 import Blog_V2.service.PostService;
+import Blog_V2.storage.InvalidImageException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -10,15 +20,22 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
 import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -54,6 +71,12 @@ public class PostControllerTest {
         public JdbcTemplate jdbcTemplate(DataSource dataSource) {
             return new JdbcTemplate(dataSource);
         }
+
+        @Bean
+        @Primary
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
     }
 
     @Autowired
@@ -73,12 +96,12 @@ public class PostControllerTest {
 
     @Test
     public void testGetPosts() throws Exception {
-        Post post = new Post();
+        PostSummary post = new PostSummary();
         post.setId(1);
         post.setTitle("Test Post");
-        post.setText("Test Content");
+        post.setTextPreview("Test Content");
 
-        List<Post> posts = Arrays.asList(post);
+        List<PostSummary> posts = Arrays.asList(post);
 
         when(postService.getPosts(anyString(), anyInt(), anyInt())).thenReturn(posts);
         when(postService.createPaging(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
@@ -107,6 +130,35 @@ public class PostControllerTest {
         verify(postService).createPaging("", 10, 1);
     }
 
+    @Test
+    public void testGetPostsBeforeCursor() throws Exception {
+        PostSummary post = new PostSummary();
+        post.setId(4);
+        post.setTitle("Test Post");
+        post.setTextPreview("Test Content");
+
+        List<PostSummary> posts = Arrays.asList(post);
+
+        Paging paging = new Paging();
+        paging.setPageSize(10);
+        paging.setBefore(5);
+        paging.setNextBefore(4);
+        paging.setHasNext(true);
+        paging.setHasPrevious(true);
+        when(postService.getPostsBefore(anyString(), anyInt(), anyInt())).thenReturn(new Page<>(posts, paging));
+
+        mockMvc.perform(get("/posts")
+                        .param("pageSize", "10")
+                        .param("before", "5"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("posts"))
+                .andExpect(model().attribute("posts", posts))
+                .andExpect(model().attribute("paging", paging));
+
+        verify(postService).getPostsBefore("", 5, 10);
+        verify(postService, never()).getPosts(anyString(), anyInt(), anyInt());
+    }
+
     @Test
     public void testGetPostById() throws Exception {
         Post post = new Post();
@@ -115,13 +167,162 @@ public class PostControllerTest {
         post.setText("Test Content");
 
         when(postService.getPostById(1)).thenReturn(post);
+        when(postService.createCommentPaging(post)).thenReturn(new Paging());
 
         mockMvc.perform(get("/posts/1"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("post"))
-                .andExpect(model().attribute("post", post));
+                .andExpect(model().attribute("post", post))
+                .andExpect(model().attribute("comments", post.getComments()));
 
         verify(postService).getPostById(1);
+        verify(postService, never()).getComments(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testGetPostCommentsAfterCursor() throws Exception {
+        Post post = new Post();
+        post.setId(1);
+        post.setTitle("Test Post");
+        post.setCommentsCount(120);
+        List<Comment> comments = Arrays.asList(new Comment(51, "Later comment"));
+        Paging paging = new Paging();
+        paging.setAfter(50);
+        paging.setHasPrevious(true);
+
+        when(postService.getPostWithoutComments(1)).thenReturn(post);
+        when(postService.getComments(1, 50, 50)).thenReturn(new Page<>(comments, paging));
+
+        // Длина страницы берётся из настроек, а не из запроса
+        mockMvc.perform(get("/posts/1").param("commentsAfter", "50").param("commentsPageSize", "2147483647"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("comments", comments))
+                .andExpect(content().string(allOf(
+                        containsString("Later comment"),
+                        containsString("комментарии 120"))));
+
+        verify(postService, never()).createCommentPaging(post);
+        verify(postService, never()).getPostById(anyInt());
+    }
+
+    @Test
+    public void testGetImageStreamsFile() throws Exception {
+        Path image = Files.createTempFile("image", ".png");
+        Files.write(image, "0123456789".getBytes());
+        try {
+            when(postService.getImageResource(1, null)).thenReturn(original(image));
+
+            mockMvc.perform(get("/posts/images/1"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                    .andExpect(content().bytes("0123456789".getBytes()));
+
+            mockMvc.perform(get("/posts/images/1").header(HttpHeaders.RANGE, "bytes=2-5"))
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                    .andExpect(content().bytes("2345".getBytes()));
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    public void testGetImageSendsValidators() throws Exception {
+        Path image = Files.createTempFile("image", ".png");
+        Files.write(image, "0123456789".getBytes());
+        try {
+            when(postService.getImageResource(1, null)).thenReturn(original(image));
+
+            mockMvc.perform(get("/posts/images/1"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().exists(HttpHeaders.ETAG))
+                    .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+
+            mockMvc.perform(get("/posts/images/1").param("v", image.getFileName().toString()))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL,
+                            allOf(containsString("max-age=31536000"), containsString("immutable"))));
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    public void testGetImageNotModifiedDoesNotReadFile() throws Exception {
+        Path image = Files.createTempFile("image", ".png");
+        Files.write(image, "0123456789".getBytes());
+        try {
+            FileSystemResource resource = spy(new FileSystemResource(image));
+            when(postService.getImageResource(1, null))
+                    .thenReturn(new StoredImage(resource, image.getFileName().toString(), true));
+
+            String eTag = mockMvc.perform(get("/posts/images/1"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            clearInvocations(resource);
+
+            mockMvc.perform(get("/posts/images/1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(content().bytes(new byte[0]));
+
+            HttpHeaders ifModifiedSince = new HttpHeaders();
+            ifModifiedSince.setIfModifiedSince(Files.getLastModifiedTime(image).toMillis() + 1000);
+            mockMvc.perform(get("/posts/images/1").headers(ifModifiedSince))
+                    .andExpect(status().isNotModified());
+
+            verify(resource, never()).getInputStream();
+            verify(resource, never()).readableChannel();
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    public void testGetImageVariant() throws Exception {
+        Path dir = Files.createTempDirectory("images");
+        Path thumbnail = Files.write(dir.resolve("123_cat.thumb.png"), "thumb".getBytes());
+        Path original = Files.write(dir.resolve("123_cat.png"), "original".getBytes());
+        try {
+            when(postService.getImageResource(1, ImageSize.THUMBNAIL))
+                    .thenReturn(new StoredImage(new FileSystemResource(thumbnail), "123_cat.png", true));
+            when(postService.getImageResource(2, ImageSize.THUMBNAIL))
+                    .thenReturn(new StoredImage(new FileSystemResource(original), "123_cat.png", false));
+            when(postService.getImageResource(3, ImageSize.THUMBNAIL)).thenReturn(original(original));
+
+            mockMvc.perform(get("/posts/images/1").param("size", "thumb").param("v", "123_cat.png"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes("thumb".getBytes()))
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+
+            // Копия ещё не готова: оригинал отдаётся, но не кешируется под ссылкой на копию
+            mockMvc.perform(get("/posts/images/2").param("size", "thumb").param("v", "123_cat.png"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes("original".getBytes()))
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+
+            // Картинка не больше миниатюры: копии не будет, оригинал и есть миниатюра
+            mockMvc.perform(get("/posts/images/3").param("size", "thumb").param("v", "123_cat.png"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+
+            // Ссылка на другую версию картинки
+            mockMvc.perform(get("/posts/images/1").param("size", "thumb").param("v", "456_dog.png"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+        } finally {
+            Files.deleteIfExists(thumbnail);
+            Files.deleteIfExists(original);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testGetImageNotFound() throws Exception {
+        when(postService.getImageResource(1, null)).thenReturn(null);
+
+        mockMvc.perform(get("/posts/images/1"))
+                .andExpect(status().isNotFound());
     }
 
     @Test
@@ -155,6 +356,22 @@ public class PostControllerTest {
         verify(postService).createPost("Test Title", "Test Text", "tag1, tag2", image);
     }
 
+    @Test
+    public void testCreateNewPostRejectsNonImage() throws Exception {
+        when(postService.createPost(anyString(), anyString(), anyString(), any()))
+                .thenThrow(new InvalidImageException("Unsupported image format"));
+
+        MockMultipartFile image = new MockMultipartFile(
+                "image", "test.jpg", "image/jpeg", "not an image".getBytes());
+
+        mockMvc.perform(multipart("/posts")
+                        .file(image)
+                        .param("title", "Test Title")
+                        .param("text", "Test Text")
+                        .param("tags", ""))
+                .andExpect(status().isBadRequest());
+    }
+
 
     @Test
     public void testDeletePost() throws Exception {
@@ -214,6 +431,15 @@ public class PostControllerTest {
         verify(postService).deleteComment(1, 2);
     }
 
+    @Test
+    public void testEditMissingCommentIsNotFound() throws Exception {
+        doThrow(new CommentNotFoundException()).when(postService).editComment(1, 999, "Updated comment");
+
+        mockMvc.perform(post("/posts/1/comments/999")
+                        .param("text", "Updated comment"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void testEditComment() throws Exception {
         doNothing().when(postService).editComment(1, 2, "Updated comment");
@@ -225,4 +451,8 @@ public class PostControllerTest {
 
         verify(postService).editComment(1, 2, "Updated comment");
     }
+
+    private static StoredImage original(Path file) {
+        return new StoredImage(new FileSystemResource(file), file.getFileName().toString(), true);
+    }
 }
@@ -0,0 +1,133 @@
+package Blog_V2.controller;
+
+import Blog_V2.service.ContentVersions;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderedPageFilterTest {
+
+    private ContentVersions contentVersions;
+    private AtomicInteger renders;
+    private FilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        contentVersions = new ContentVersions();
+        renders = new AtomicInteger();
+        // Имитация рендеринга шаблона: каждый вызов - новая страница
+        chain = (request, response) -> {
+            response.setContentType("text/html;charset=UTF-8");
+            response.getWriter().write("<html>render " + renders.incrementAndGet() + "</html>");
+        };
+    }
+
+    @Test
+    public void testCachesRenderedPageUntilVersionChanges() throws Exception {
+        RenderedPageFilter filter = filter(true);
+
+        assertEquals("<html>render 1</html>", get(filter, "/posts/1", null).getContentAsString());
+        assertEquals("<html>render 1</html>", get(filter, "/posts/1", null).getContentAsString());
+        assertEquals(1, renders.get());
+
+        contentVersions.postChanged(1);
+
+        assertEquals("<html>render 2</html>", get(filter, "/posts/1", null).getContentAsString());
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    public void testFeedVersionChangesWithAnyPost() throws Exception {
+        RenderedPageFilter filter = filter(true);
+        get(filter, "/posts", null);
+        get(filter, "/posts/2", null);
+
+        contentVersions.postChanged(1);
+
+        assertEquals("<html>render 3</html>", get(filter, "/posts", null).getContentAsString());
+        // Пост 2 не менялся - его страница остаётся в кеше
+        assertEquals("<html>render 2</html>", get(filter, "/posts/2", null).getContentAsString());
+    }
+
+    @Test
+    public void testConditionalGetSkipsRendering() throws Exception {
+        RenderedPageFilter filter = filter(false);
+
+        MockHttpServletResponse first = get(filter, "/posts", null);
+        String eTag = first.getHeader("ETag");
+        assertNotNull(eTag);
+        assertEquals("no-cache", first.getHeader("Cache-Control"));
+
+        MockHttpServletResponse notModified = get(filter, "/posts", eTag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getStatus());
+        assertEquals("", notModified.getContentAsString());
+        assertEquals(1, renders.get());
+
+        contentVersions.postChanged(5);
+
+        MockHttpServletResponse changed = get(filter, "/posts", eTag);
+        assertEquals(HttpServletResponse.SC_OK, changed.getStatus());
+        assertNotEquals(eTag, changed.getHeader("ETag"));
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    public void testDeletedPostDoesNotMatchOldETag() throws Exception {
+        RenderedPageFilter filter = filter(false);
+        String untouched = get(filter, "/posts/3", null).getHeader("ETag");
+        contentVersions.postChanged(4);
+        String changed = get(filter, "/posts/4", null).getHeader("ETag");
+
+        contentVersions.postDeleted(3);
+        contentVersions.postDeleted(4);
+
+        // Записи удалённых постов нет, но версия всё равно новая - страница рендерится заново
+        assertEquals(HttpServletResponse.SC_OK, get(filter, "/posts/3", untouched).getStatus());
+        assertEquals(HttpServletResponse.SC_OK, get(filter, "/posts/4", changed).getStatus());
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    public void testDisabledCacheRendersEveryTime() throws Exception {
+        RenderedPageFilter filter = filter(false);
+
+        get(filter, "/posts/1", null);
+        get(filter, "/posts/1", null);
+
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    public void testOtherRequestsAreNotTouched() throws Exception {
+        RenderedPageFilter filter = filter(true);
+
+        MockHttpServletResponse form = get(filter, "/posts/add", null);
+        get(filter, "/posts/add", null);
+
+        assertNull(form.getHeader("ETag"));
+        assertEquals(2, renders.get());
+    }
+
+    private RenderedPageFilter filter(boolean enabled) {
+        return new RenderedPageFilter(contentVersions, enabled, DataSize.ofMegabytes(1), Duration.ofMinutes(10));
+    }
+
+    private MockHttpServletResponse get(RenderedPageFilter filter, String uri, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
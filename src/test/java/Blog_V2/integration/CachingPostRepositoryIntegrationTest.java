@@ -0,0 +1,147 @@
+package Blog_V2.integration;
+
+import Blog_V2.BlogGradleSpringWebappApplication;
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.repository.CachingPostRepository;
+import Blog_V2.repository.FeedCache;
+import Blog_V2.repository.JdbcPostRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = BlogGradleSpringWebappApplication.class)
+@TestPropertySource(locations = "classpath:application-test.properties")
+@Transactional
+class CachingPostRepositoryIntegrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcPostRepository jdbcPostRepository;
+    private JdbcPostRepository delegate;
+    private CachingPostRepository cachingRepository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcPostRepository = new JdbcPostRepository(jdbcTemplate);
+        delegate = spy(new JdbcPostRepository(jdbcTemplate));
+        cachingRepository = new CachingPostRepository(delegate,
+                new FeedCache(DataSize.ofMegabytes(1), 5, Duration.ofMinutes(10)), 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    public void testRepeatedReadsHitCache() {
+        int postId = createPost();
+
+        cachingRepository.findById(postId);
+        cachingRepository.findById(postId);
+        assertEquals(Optional.of("/images/cached.jpg"), cachingRepository.findImagePath(postId));
+
+        verify(delegate, times(1)).findById(postId);
+        verify(delegate, never()).findImagePath(anyInt());
+        assertEquals(1, cachingRepository.stats().missCount());
+        assertEquals(1, cachingRepository.stats().hitCount());
+    }
+
+    @Test
+    public void testReturnedPostsAreCopies() {
+        int postId = createPost();
+
+        Post post = cachingRepository.findById(postId).get();
+        post.setTitle("Changed locally");
+        post.getTags().clear();
+        post.getComments().get(0).setText("Changed locally");
+
+        Post again = cachingRepository.findById(postId).get();
+        assertEquals("Cached", again.getTitle());
+        assertEquals(2, again.getTags().size());
+        assertEquals("First", again.getComments().get(0).getText());
+        assertFalse(again.isDirty());
+    }
+
+    @Test
+    public void testNoStaleReadsAfterSave() {
+        assertFreshAfter(post -> {
+            post.setTitle("Renamed");
+            post.setTags(Arrays.asList("java", "new"));
+            post.addComment(new Comment("Added on save"));
+            cachingRepository.save(post);
+        });
+    }
+
+    @Test
+    public void testNoStaleReadsAfterCommentMutations() {
+        assertFreshAfter(post -> cachingRepository.addComment(post.getId(), "Added"));
+        assertFreshAfter(post -> cachingRepository.editComment(post.getId(), post.getComments().get(0).getId(), "Edited"));
+        assertFreshAfter(post -> cachingRepository.deleteComment(post.getId(), post.getComments().get(0).getId()));
+    }
+
+    @Test
+    public void testNoStaleReadsAfterLikes() {
+        assertFreshAfter(post -> cachingRepository.updateLikes(post.getId(), 1));
+        assertFreshAfter(post -> cachingRepository.applyLikeDeltas(Map.of(post.getId(), 5)));
+    }
+
+    @Test
+    public void testNoStaleReadsAfterDelete() {
+        int postId = createPost();
+        assertTrue(cachingRepository.findById(postId).isPresent());
+
+        cachingRepository.deletePost(postId);
+
+        assertTrue(cachingRepository.findById(postId).isEmpty());
+        assertTrue(cachingRepository.findImagePath(postId).isEmpty());
+    }
+
+    // Прогревает кеш, применяет изменение и сравнивает чтение через кеш с чтением из базы
+    private void assertFreshAfter(Consumer<Post> mutation) {
+        int postId = createPost();
+        Post cached = cachingRepository.findById(postId).get();
+
+        mutation.accept(cached);
+
+        Post expected = jdbcPostRepository.findById(postId).get();
+        Post actual = cachingRepository.findById(postId).get();
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getImagePath(), actual.getImagePath());
+        assertEquals(expected.getLikesCount(), actual.getLikesCount());
+        assertEquals(expected.getTags(), actual.getTags());
+        assertEquals(describe(expected.getComments()), describe(actual.getComments()));
+    }
+
+    private int createPost() {
+        Post post = new Post();
+        post.setTitle("Cached");
+        post.setText("Content");
+        post.setImagePath("/images/cached.jpg");
+        post.setTags(Arrays.asList("java", "spring"));
+        post.addComment(new Comment("First"));
+        post.addComment(new Comment("Second"));
+        cachingRepository.save(post);
+        return post.getId();
+    }
+
+    private static List<String> describe(List<Comment> comments) {
+        return comments.stream()
+                .map(comment -> comment.getId() + ":" + comment.getText())
+                .collect(Collectors.toList());
+    }
+}
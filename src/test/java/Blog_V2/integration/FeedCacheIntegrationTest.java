@@ -0,0 +1,256 @@
+package Blog_V2.integration;
+
+import Blog_V2.BlogGradleSpringWebappApplication;
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.repository.CachingPostRepository;
+import Blog_V2.repository.FeedCache;
+import Blog_V2.repository.JdbcPostRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// Без @Transactional: внутри транзакции лента читается мимо кеша
+@SpringBootTest(classes = BlogGradleSpringWebappApplication.class)
+@TestPropertySource(locations = "classpath:application-test.properties")
+class FeedCacheIntegrationTest {
+
+    private static final String[] SEARCHES = {"", "feed-a", "feed-a, feed-b", "feed-a + feed-b"};
+    private static final int[] PAGE_SIZES = {1, 3};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcPostRepository jdbcPostRepository;
+    private JdbcPostRepository delegate;
+    private FeedCache feedCache;
+    private CachingPostRepository cachingRepository;
+    private final List<Integer> created = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcPostRepository = new JdbcPostRepository(jdbcTemplate);
+        delegate = spy(new JdbcPostRepository(jdbcTemplate));
+        feedCache = new FeedCache(DataSize.ofMegabytes(1), 2, Duration.ofMinutes(10));
+        cachingRepository = new CachingPostRepository(delegate, feedCache, 100, Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(jdbcPostRepository::deletePost);
+    }
+
+    @Test
+    public void testCreateAndDeleteUpdateCachedPageInPlace() {
+        createPost("Older", "feed-a");
+        createPost("Old", "feed-a");
+        List<PostSummary> before = cachingRepository.getPosts("feed-a", 1, 1);
+        assertEquals("Old", before.get(0).getTitle());
+
+        int newest = createPost("New", "feed-a");
+        assertEquals("New", cachingRepository.getPosts("feed-a", 1, 1).get(0).getTitle());
+        assertTrue(cachingRepository.hasMorePosts("feed-a", 1, 1));
+
+        cachingRepository.deletePost(newest);
+        assertEquals("Old", cachingRepository.getPosts("feed-a", 1, 1).get(0).getTitle());
+
+        // Страница загружена из базы один раз, дальше только правки на месте
+        verify(delegate, times(1)).getPosts("feed-a", 3, 1);
+        verify(delegate, never()).hasMorePosts(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testCreatedPostTagsMatchFeedFromDatabase() {
+        createPost("Old", "feed-a");
+        cachingRepository.getPosts("feed-a", 1, 1);
+
+        createPost("New", "feed-b", "feed-a", "feed-b");
+
+        assertEquals(describe(jdbcPostRepository.getPosts("feed-a", 1, 1)),
+                describe(cachingRepository.getPosts("feed-a", 1, 1)));
+        verify(delegate, times(1)).getPosts("feed-a", 3, 1);
+    }
+
+    @Test
+    public void testLikesAndCommentsPatchCachedPageInPlace() {
+        int postId = createPost("Liked", "feed-a");
+        cachingRepository.getPosts("feed-a", 1, 1);
+
+        cachingRepository.updateLikes(postId, 1);
+        cachingRepository.applyLikeDeltas(Map.of(postId, 2));
+        cachingRepository.updateLikes(postId, -5);
+        cachingRepository.updateLikes(postId, 1);
+        cachingRepository.addComment(postId, "Second");
+        int commentId = jdbcPostRepository.findById(postId).get().getComments().get(0).getId();
+        cachingRepository.deleteComment(postId, commentId);
+        cachingRepository.addComment(postId, "Third");
+
+        PostSummary cached = cachingRepository.getPosts("feed-a", 1, 1).get(0);
+        assertEquals(1, cached.getLikesCount());
+        assertEquals(2, cached.getCommentsCount());
+        assertEquals(describe(jdbcPostRepository.getPosts("feed-a", 1, 1)), describe(List.of(cached)));
+        // Ни перечитывания страницы, ни отдельного чтения поста
+        verify(delegate, times(1)).getPosts("feed-a", 3, 1);
+        verify(delegate, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testEditedPostPagesReloadOnNextRead() {
+        int postId = createPost("Before", "feed-a");
+        cachingRepository.getPosts("feed-a", 1, 1);
+        cachingRepository.getPosts("feed-b", 1, 1);
+        cachingRepository.getPosts("feed-c", 1, 1);
+
+        Post post = cachingRepository.findById(postId).get();
+        post.setTitle("After");
+        post.setTags(Arrays.asList("feed-b"));
+        cachingRepository.save(post);
+        verify(delegate, times(1)).getPosts("feed-a", 3, 1);
+
+        assertNotEquals(postId, firstIdOrZero(cachingRepository.getPosts("feed-a", 1, 1)));
+        assertEquals("After", cachingRepository.getPosts("feed-b", 1, 1).get(0).getTitle());
+        cachingRepository.getPosts("feed-c", 1, 1);
+        verify(delegate, times(2)).getPosts("feed-a", 3, 1);
+        verify(delegate, times(2)).getPosts("feed-b", 3, 1);
+        // Страницу, которой правка не касается, не трогаем
+        verify(delegate, times(1)).getPosts("feed-c", 3, 1);
+    }
+
+    @Test
+    public void testConcurrentLikesAndReadsKeepCachedCountsExact() throws Exception {
+        int postId = createPost("Popular", "feed-a");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        cachingRepository.updateLikes(postId, 1);
+                    }
+                }));
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        cachingRepository.getPosts("feed-a", 1, 1);
+                        if (i % 10 == 0) {
+                            feedCache.clear();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(200, cachingRepository.getPosts("feed-a", 1, 1).get(0).getLikesCount());
+    }
+
+    @Test
+    public void testFeedMatchesUncachedPathUnderRandomMutations() {
+        Random random = new Random(7);
+        List<Integer> alive = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            alive.add(createPost("Post " + i, randomTags(random)));
+        }
+        assertConsistent();
+
+        for (int step = 0; step < 150; step++) {
+            switch (random.nextInt(6)) {
+                case 0, 1 -> alive.add(createPost("Post " + step, randomTags(random)));
+                case 2 -> {
+                    if (!alive.isEmpty()) {
+                        cachingRepository.deletePost(alive.remove(random.nextInt(alive.size())));
+                    }
+                }
+                case 3 -> {
+                    if (!alive.isEmpty()) {
+                        cachingRepository.updateLikes(alive.get(random.nextInt(alive.size())), random.nextBoolean() ? 1 : -1);
+                    }
+                }
+                case 4 -> {
+                    if (!alive.isEmpty()) {
+                        cachingRepository.addComment(alive.get(random.nextInt(alive.size())), "Comment " + step);
+                    }
+                }
+                default -> {
+                    if (!alive.isEmpty()) {
+                        Post post = cachingRepository.findById(alive.get(random.nextInt(alive.size()))).get();
+                        post.setTitle("Edited " + step);
+                        post.setTags(Arrays.asList(randomTags(random)));
+                        cachingRepository.save(post);
+                    }
+                }
+            }
+            assertConsistent();
+        }
+        assertTrue(feedCache.stats().hitCount() > 0);
+    }
+
+    private void assertConsistent() {
+        for (String search : SEARCHES) {
+            for (int pageSize : PAGE_SIZES) {
+                String page = "search='" + search + "', pageSize=" + pageSize;
+                assertEquals(describe(jdbcPostRepository.getPosts(search, pageSize, 1)),
+                        describe(cachingRepository.getPosts(search, pageSize, 1)), page);
+                assertEquals(jdbcPostRepository.hasMorePosts(search, pageSize, 1),
+                        cachingRepository.hasMorePosts(search, pageSize, 1), page);
+            }
+        }
+    }
+
+    private int createPost(String title, String... tags) {
+        Post post = new Post();
+        post.setTitle(title);
+        post.setText("Content");
+        post.setTags(Arrays.asList(tags));
+        post.addComment(new Comment("First"));
+        cachingRepository.save(post);
+        created.add(post.getId());
+        return post.getId();
+    }
+
+    private static int firstIdOrZero(List<PostSummary> posts) {
+        return posts.isEmpty() ? 0 : posts.get(0).getId();
+    }
+
+    private static String[] randomTags(Random random) {
+        List<String> tags = new ArrayList<>();
+        if (random.nextBoolean()) {
+            tags.add("feed-a");
+        }
+        if (random.nextBoolean()) {
+            tags.add("feed-b");
+        }
+        return tags.toArray(new String[0]);
+    }
+
+    private static List<String> describe(List<PostSummary> posts) {
+        return posts.stream()
+                .map(post -> post.getId() + " " + post.getTitle() + " likes=" + post.getLikesCount()
+                        + " tags=" + post.getTags() + " comments=" + post.getCommentsCount())
+                .collect(Collectors.toList());
+    }
+}
@@ -2,23 +2,42 @@ package Blog_V2.integration;
 
 
 import Blog_V2.BlogGradleSpringWebappApplication;
+import Blog_V2.dao.repository.ImageRefRepository;
 import Blog_V2.dao.repository.PostRepository;
 import Blog_V2.model.Comment;
 import Blog_V2.model.Post;
-import org.junit.jupiter.api.BeforeEach;
+import Blog_V2.model.PostSummary;
+import Blog_V2.repository.JdbcPostRepository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
 
 import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,14 +49,12 @@ class JdbcPostRepositoryIntegrationTest {
     @Autowired
     private PostRepository postRepository;
 
+    @Autowired
+    private ImageRefRepository imageRefRepository;
+
     @Autowired
     private DataSource dataSource;
-    @BeforeEach
-    void setUp() throws SQLException {
-        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
-        populator.addScript(new ClassPathResource("schema.sql"));
-        populator.execute(dataSource);
-    }
+
     @Test
     public void testSaveNewPostWithTagsAndComments() {
         Post post = new Post();
@@ -235,7 +252,7 @@ class JdbcPostRepositoryIntegrationTest {
         post2.setText("Content 2");
         postRepository.save(post2);
 
-        List<Post> posts = postRepository.getPosts("", 10, 1);
+        List<PostSummary> posts = postRepository.getPosts("", 10, 1);
 
         assertNotNull(posts);
         assertFalse(posts.isEmpty());
@@ -256,10 +273,10 @@ class JdbcPostRepositoryIntegrationTest {
             postRepository.save(post);
         }
 
-        List<Post> firstPage = postRepository.getPosts("", 3, 1);
+        List<PostSummary> firstPage = postRepository.getPosts("", 3, 1);
         assertEquals(3, firstPage.size());
 
-        List<Post> secondPage = postRepository.getPosts("", 3, 2);
+        List<PostSummary> secondPage = postRepository.getPosts("", 3, 2);
         assertEquals(2, secondPage.size());
     }
 
@@ -280,7 +297,7 @@ class JdbcPostRepositoryIntegrationTest {
         post3.setText("Content");
         postRepository.save(post3);
 
-        List<Post> posts = postRepository.getPosts("", 10, 1);
+        List<PostSummary> posts = postRepository.getPosts("", 10, 1);
 
         assertNotNull(posts);
         assertTrue(posts.size() >= 3);
@@ -288,6 +305,118 @@ class JdbcPostRepositoryIntegrationTest {
         assertEquals("Third", posts.get(0).getTitle());
         assertEquals("First", posts.get(posts.size() - 1).getTitle());
     }
+    @Test
+    public void testGetPostsBeforeSeeksOnId() {
+        int[] ids = new int[5];
+        for (int i = 0; i < 5; i++) {
+            Post post = new Post();
+            post.setTitle("Post " + (i + 1));
+            post.setText("Content");
+            post.setTags(Arrays.asList("tag" + (i + 1)));
+            postRepository.save(post);
+            ids[i] = post.getId();
+        }
+
+        List<PostSummary> firstPage = postRepository.getPostsBefore("", Integer.MAX_VALUE, 3);
+        assertEquals(3, firstPage.size());
+        assertEquals("Post 5", firstPage.get(0).getTitle());
+        assertEquals(Arrays.asList("tag5"), firstPage.get(0).getTags());
+
+        List<PostSummary> secondPage = postRepository.getPostsBefore("", ids[2], 3);
+        assertEquals(2, secondPage.size());
+        assertEquals(ids[1], secondPage.get(0).getId());
+        assertEquals(ids[0], secondPage.get(1).getId());
+
+        assertTrue(postRepository.getPostsBefore("", ids[0], 3).stream()
+                .noneMatch(p -> p.getId() >= ids[0]));
+    }
+
+    @Test
+    public void testGetPostsFiltersByAnyTag() {
+        savePostWithTags("Java", "java");
+        savePostWithTags("Spring", "spring");
+        savePostWithTags("Both", "java", "spring");
+        savePostWithTags("Other", "other");
+
+        List<PostSummary> posts = postRepository.getPosts("java, #spring", 10, 1);
+
+        assertEquals(Arrays.asList("Both", "Spring", "Java"),
+                posts.stream().map(PostSummary::getTitle).toList());
+    }
+
+    @Test
+    public void testGetPostsFiltersByAllTags() {
+        savePostWithTags("Java", "java");
+        savePostWithTags("Both", "java", "spring");
+        savePostWithTags("Spring", "spring");
+
+        List<PostSummary> posts = postRepository.getPosts("java + spring", 10, 1);
+
+        assertEquals(1, posts.size());
+        assertEquals("Both", posts.get(0).getTitle());
+        assertEquals(2, posts.get(0).getTags().size());
+    }
+
+    @Test
+    public void testTagSearchPaginationAndHasMorePosts() {
+        for (int i = 1; i <= 5; i++) {
+            savePostWithTags("Tagged " + i, "paged");
+            savePostWithTags("Untagged " + i, "noise");
+        }
+
+        List<PostSummary> firstPage = postRepository.getPosts("paged", 3, 1);
+        assertEquals(3, firstPage.size());
+        assertTrue(firstPage.stream().allMatch(p -> p.getTitle().startsWith("Tagged")));
+        assertTrue(postRepository.hasMorePosts("paged", 3, 1));
+        assertFalse(postRepository.hasMorePosts("paged", 3, 2));
+
+        List<PostSummary> nextPage = postRepository.getPostsBefore("paged", firstPage.get(2).getId(), 3);
+        assertEquals(2, nextPage.size());
+        assertEquals("Tagged 2", nextPage.get(0).getTitle());
+        assertEquals("Tagged 1", nextPage.get(1).getTitle());
+    }
+
+    @Test
+    public void testTagLookupUsesIndex() {
+        assertPlanUsesIndex("SELECT post_id FROM tags WHERE tag IN ('java', 'spring')", "IDX_TAGS_TAG_POST_ID");
+    }
+
+    @Test
+    public void testCommentsAreLoadedInKeysetPages() {
+        JdbcPostRepository repository = new JdbcPostRepository(new JdbcTemplate(dataSource), false, 3);
+        Post post = new Post();
+        post.setTitle("Long thread");
+        post.setText("Content");
+        for (int i = 1; i <= 7; i++) {
+            post.addComment(new Comment("Comment " + i));
+        }
+        repository.save(post);
+
+        // С постом - только первая страница, но число комментариев полное
+        Post found = repository.findById(post.getId()).get();
+        assertEquals(7, found.getCommentsCount());
+        assertEquals(List.of("Comment 1", "Comment 2", "Comment 3"),
+                found.getComments().stream().map(Comment::getText).toList());
+
+        List<Comment> secondPage = repository.getComments(post.getId(), found.getComments().get(2).getId(), 3);
+        assertEquals(List.of("Comment 4", "Comment 5", "Comment 6"),
+                secondPage.stream().map(Comment::getText).toList());
+        List<Comment> lastPage = repository.getComments(post.getId(), secondPage.get(2).getId(), 3);
+        assertEquals(List.of("Comment 7"), lastPage.stream().map(Comment::getText).toList());
+        assertTrue(repository.getComments(post.getId(), lastPage.get(0).getId(), 3).isEmpty());
+
+        // Для дальних страниц пост грузится без комментариев
+        Post withoutComments = repository.findByIdWithoutComments(post.getId()).get();
+        assertEquals(7, withoutComments.getCommentsCount());
+        assertTrue(withoutComments.getComments().isEmpty());
+    }
+
+    @Test
+    public void testCommentPageUsesIndex() {
+        assertPlanUsesIndex("SELECT id, text FROM comments WHERE post_id = 1 AND id > 100 ORDER BY id LIMIT 50",
+                "IDX_COMMENTS_POST_ID_ID");
+    }
+
     @Test
     public void testHasMorePosts() {
         for (int i = 1; i <= 5; i++) {
@@ -319,10 +448,40 @@ class JdbcPostRepositoryIntegrationTest {
         postRepository.save(post);
         int postId = post.getId();
 
-        postRepository.deletePost(postId);
+        AtomicInteger statements = new AtomicInteger();
+        new JdbcPostRepository(new JdbcTemplate(countingDataSource(statements))).deletePost(postId);
+        assertEquals(1, statements.get());
 
         Optional<Post> found = postRepository.findById(postId);
         assertFalse(found.isPresent());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tags WHERE post_id = ?", Integer.class, postId));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM comments WHERE post_id = ?", Integer.class, postId));
+    }
+
+    @Test
+    public void testPostTagsAreUnique() {
+        Post post = new Post();
+        post.setTitle("Unique tags");
+        post.setText("Content");
+        post.setTags(Arrays.asList("java", "java"));
+        postRepository.save(post);
+
+        assertEquals(List.of("java"), postRepository.findById(post.getId()).get().getTags());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        assertThrows(DataIntegrityViolationException.class, () ->
+                jdbcTemplate.update("INSERT INTO tags (post_id, tag) VALUES (?, ?)", post.getId(), "java"));
+    }
+
+    @Test
+    public void testPostTagsLookupUsesIndex() {
+        assertPlanUsesIndex("SELECT tag FROM tags WHERE post_id = 1", "UQ_TAGS_POST_ID_TAG");
+    }
+
+    @Test
+    public void testCascadeDeletesUseIndexes() {
+        assertPlanUsesIndex("DELETE FROM tags WHERE post_id = 1", "UQ_TAGS_POST_ID_TAG");
+        assertPlanUsesIndex("DELETE FROM comments WHERE post_id = 1", "IDX_COMMENTS_POST_ID_ID");
     }
 
     @Test
@@ -332,6 +491,97 @@ class JdbcPostRepositoryIntegrationTest {
         });
     }
 
+    @Test
+    public void testUpdateLikesNeverGoesNegative() {
+        Post post = new Post();
+        post.setTitle("Likes");
+        post.setText("Content");
+        post.setLikesCount(1);
+        postRepository.save(post);
+
+        assertTrue(postRepository.updateLikes(post.getId(), -1));
+        assertTrue(postRepository.updateLikes(post.getId(), -1));
+        assertEquals(0, postRepository.findById(post.getId()).get().getLikesCount());
+
+        assertTrue(postRepository.updateLikes(post.getId(), 1));
+        assertEquals(1, postRepository.findById(post.getId()).get().getLikesCount());
+    }
+
+    @Test
+    public void testUpdateLikesNonExistingPost() {
+        assertFalse(postRepository.updateLikes(99999, 1));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testConcurrentLikesAreNotLost() throws Exception {
+        Post post = new Post();
+        post.setTitle("Viral");
+        post.setText("Content");
+        postRepository.save(post);
+        int postId = post.getId();
+
+        int likes = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < likes; i++) {
+                results.add(executor.submit(() -> postRepository.updateLikes(postId, 1)));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS));
+            }
+
+            assertEquals(likes, postRepository.findById(postId).get().getLikesCount());
+        } finally {
+            executor.shutdownNow();
+            postRepository.deletePost(postId);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testParallelFindByIdMatchesSequential() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        JdbcPostRepository parallel = new JdbcPostRepository(jdbcTemplate, true);
+        Post post = new Post();
+        post.setTitle("Parallel");
+        post.setText("Content");
+        post.setTags(Arrays.asList("a", "b"));
+        post.addComment(new Comment("First"));
+        post.addComment(new Comment("Second"));
+        postRepository.save(post);
+        try {
+            Post sequential = new JdbcPostRepository(jdbcTemplate).findById(post.getId()).get();
+            Post found = parallel.findById(post.getId()).get();
+
+            assertEquals(sequential.getTitle(), found.getTitle());
+            assertEquals(sequential.getText(), found.getText());
+            assertEquals(Set.copyOf(sequential.getTags()), Set.copyOf(found.getTags()));
+            assertEquals(sequential.getComments().stream().map(Comment::getText).sorted().toList(),
+                    found.getComments().stream().map(Comment::getText).sorted().toList());
+            assertFalse(parallel.findById(99999).isPresent());
+        } finally {
+            postRepository.deletePost(post.getId());
+        }
+    }
+
+    @Test
+    public void testParallelFindByIdFallsBackToSequentialInTransaction() {
+        JdbcPostRepository parallel = new JdbcPostRepository(new JdbcTemplate(dataSource), true);
+        Post post = new Post();
+        post.setTitle("Uncommitted");
+        post.setText("Content");
+        post.setTags(Arrays.asList("a"));
+        post.addComment(new Comment("First"));
+        postRepository.save(post);
+
+        // Пост ещё не закоммичен: на других соединениях его тегов и комментариев не видно
+        Post found = parallel.findById(post.getId()).get();
+        assertEquals(List.of("a"), found.getTags());
+        assertEquals(1, found.getComments().size());
+    }
+
     @Test
     public void testDeleteComment() {
         Post post = new Post();
@@ -357,6 +607,44 @@ class JdbcPostRepositoryIntegrationTest {
         assertEquals("Keep this comment", comments.get(0).getText());
     }
 
+    @Test
+    public void testAddCommentDirectly() {
+        Post post = new Post();
+        post.setTitle("Direct comment");
+        post.setText("Content");
+        postRepository.save(post);
+
+        assertTrue(postRepository.addComment(post.getId(), "Direct"));
+
+        List<Comment> comments = postRepository.findById(post.getId()).get().getComments();
+        assertEquals(1, comments.size());
+        assertEquals("Direct", comments.get(0).getText());
+        assertTrue(comments.get(0).getId() > 0);
+    }
+
+    @Test
+    public void testAddCommentToNonExistingPost() {
+        assertFalse(postRepository.addComment(99999, "Orphan"));
+    }
+
+    @Test
+    public void testCommentMutationsCheckOwnership() {
+        Post post = new Post();
+        post.setTitle("Owner");
+        post.setText("Content");
+        post.addComment(new Comment("Owned"));
+        postRepository.save(post);
+        int commentId = post.getComments().get(0).getId();
+
+        assertFalse(postRepository.editComment(99999, commentId, "Hijacked"));
+        assertFalse(postRepository.deleteComment(99999, commentId));
+        assertEquals("Owned", postRepository.findById(post.getId()).get().getComments().get(0).getText());
+
+        assertTrue(postRepository.editComment(post.getId(), commentId, "Edited"));
+        assertTrue(postRepository.deleteComment(post.getId(), commentId));
+        assertFalse(postRepository.deleteComment(post.getId(), commentId));
+    }
+
     @Test
     public void testEditComment() {
         Post post = new Post();
@@ -381,4 +669,262 @@ class JdbcPostRepositoryIntegrationTest {
         assertEquals(newText, comments.get(0).getText());
         assertEquals(commentId, comments.get(0).getId());
     }
+
+    @Test
+    public void testGetPostsQueryCountDoesNotDependOnPageSize() {
+        for (int i = 1; i <= 20; i++) {
+            Post post = new Post();
+            post.setTitle("Post " + i);
+            post.setText("Content " + i);
+            post.setTags(Arrays.asList("tag" + i, "common"));
+            post.addComment(new Comment("Comment " + i));
+            postRepository.save(post);
+        }
+        AtomicInteger statements = new AtomicInteger();
+        PostRepository countingRepository = new JdbcPostRepository(new JdbcTemplate(countingDataSource(statements)));
+
+        List<PostSummary> smallPage = countingRepository.getPosts("", 2, 1);
+        int smallPageStatements = statements.getAndSet(0);
+
+        List<PostSummary> bigPage = countingRepository.getPosts("", 20, 1);
+        int bigPageStatements = statements.getAndSet(0);
+
+        assertEquals(2, smallPage.size());
+        assertEquals(20, bigPage.size());
+        assertEquals(1, smallPageStatements);
+        assertEquals(smallPageStatements, bigPageStatements);
+
+        PostSummary first = bigPage.get(0);
+        assertEquals(2, first.getTags().size());
+        assertTrue(first.getTags().contains("tag20"));
+        assertTrue(first.getTags().contains("common"));
+        assertEquals(1, first.getCommentsCount());
+    }
+
+    @Test
+    public void testSaveIssuesOnlyNeededStatements() {
+        Post original = new Post();
+        original.setTitle("Original");
+        original.setText("Content");
+        original.setTags(Arrays.asList("keep", "drop"));
+        original.addComment(new Comment("Existing comment"));
+        postRepository.save(original);
+
+        AtomicInteger statements = new AtomicInteger();
+        PostRepository countingRepository = new JdbcPostRepository(new JdbcTemplate(countingDataSource(statements)));
+        Post post = countingRepository.findById(original.getId()).get();
+
+        statements.set(0);
+        countingRepository.save(post);
+        assertEquals(0, statements.get(), "unchanged post");
+
+        post.setTitle("Renamed");
+        countingRepository.save(post);
+        assertEquals(1, statements.getAndSet(0), "title-only edit");
+
+        post.setLikesCount(post.getLikesCount() + 1);
+        countingRepository.save(post);
+        assertEquals(1, statements.getAndSet(0), "like change");
+
+        post.addComment(new Comment("New comment"));
+        countingRepository.save(post);
+        assertEquals(1, statements.getAndSet(0), "comment addition");
+
+        post.setTags(Arrays.asList("keep", "new1", "new2"));
+        countingRepository.save(post);
+        assertEquals(2, statements.getAndSet(0), "tag change: one delete batch and one insert batch");
+
+        Post reloaded = postRepository.findById(original.getId()).get();
+        assertEquals("Renamed", reloaded.getTitle());
+        assertEquals(1, reloaded.getLikesCount());
+        assertEquals(3, reloaded.getTags().size());
+        assertTrue(reloaded.getTags().containsAll(Arrays.asList("keep", "new1", "new2")));
+        assertEquals(2, reloaded.getComments().size());
+        assertEquals("New comment", reloaded.getComments().get(1).getText());
+    }
+
+    // Загруженный пост помнит свои теги: правка заголовка не переписывает теги и комментарии
+    @Test
+    public void testEditOfLoadedPostKeepsTagRows() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Post post = new Post();
+        post.setTitle("Loaded");
+        post.setText("Content");
+        post.setTags(Arrays.asList("first", "second"));
+        post.addComment(new Comment("Comment"));
+        postRepository.save(post);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            JdbcPostRepository repository = new JdbcPostRepository(jdbcTemplate, parallel);
+            Post loaded = repository.findById(post.getId()).get();
+            loaded.setTitle("Edited " + parallel);
+            repository.save(loaded);
+
+            assertEquals(List.of("first", "second"), jdbcTemplate.queryForList(
+                    "SELECT tag FROM tags WHERE post_id = ? ORDER BY tag", String.class, post.getId()));
+            assertEquals(1, jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM comments WHERE post_id = ?", Integer.class, post.getId()));
+        }
+    }
+
+    @Test
+    public void testSaveOfDetachedPostReplacesTags() {
+        Post post = new Post();
+        post.setTitle("Detached");
+        post.setText("Content");
+        post.setTags(Arrays.asList("old"));
+        postRepository.save(post);
+
+        Post detached = new Post();
+        detached.setId(post.getId());
+        detached.setTitle("Detached");
+        detached.setText("Content");
+        detached.setTags(Arrays.asList("fresh"));
+        postRepository.save(detached);
+
+        assertEquals(Arrays.asList("fresh"), postRepository.findById(post.getId()).get().getTags());
+    }
+
+    @Test
+    public void testGetPostsLoadsTagsAndCommentCountForEachPost() {
+        Post withData = new Post();
+        withData.setTitle("With data");
+        withData.setText("Content");
+        withData.setTags(Arrays.asList("a", "b"));
+        withData.addComment(new Comment("First"));
+        withData.addComment(new Comment("Second"));
+        postRepository.save(withData);
+
+        Post empty = new Post();
+        empty.setTitle("Empty");
+        empty.setText("Content");
+        postRepository.save(empty);
+
+        List<PostSummary> posts = postRepository.getPosts("", 2, 1);
+
+        assertEquals("Empty", posts.get(0).getTitle());
+        assertTrue(posts.get(0).getTags().isEmpty());
+        assertEquals(0, posts.get(0).getCommentsCount());
+
+        assertEquals("With data", posts.get(1).getTitle());
+        assertEquals(2, posts.get(1).getTags().size());
+        assertTrue(posts.get(1).getTags().containsAll(Arrays.asList("a", "b")));
+        assertEquals(2, posts.get(1).getCommentsCount());
+    }
+
+    @Test
+    public void testFeedLoadsPreviewInsteadOfText() {
+        Post post = new Post();
+        post.setTitle("Long");
+        post.setText("x".repeat(150) + "\nsecond line");
+        postRepository.save(post);
+
+        PostSummary inFeed = postRepository.getPosts("", 1, 1).get(0);
+        assertEquals(post.getId(), inFeed.getId());
+        assertEquals("x".repeat(100) + "...", inFeed.getTextPreview());
+
+        Post found = postRepository.findById(post.getId()).get();
+        assertEquals(post.getText(), found.getText());
+        assertEquals(Arrays.asList("x".repeat(150), "second line"), found.getTextParts());
+    }
+
+    @Test
+    public void testFeedSummariesMatchFullPosts() {
+        for (int i = 1; i <= 10; i++) {
+            Post post = new Post();
+            post.setTitle("Post " + i);
+            post.setText("t".repeat(200));
+            post.setTags(Arrays.asList("tag" + i, "common"));
+            for (int j = 0; j < i; j++) {
+                post.addComment(new Comment("Comment " + j));
+            }
+            postRepository.save(post);
+        }
+
+        List<PostSummary> summaries = postRepository.getPosts("", 10, 1);
+        List<Post> fullPosts = loadFullPosts(new JdbcTemplate(dataSource), 10);
+
+        assertEquals(10, summaries.size());
+        for (int i = 0; i < summaries.size(); i++) {
+            Post full = fullPosts.get(i);
+            assertEquals(full.getId(), summaries.get(i).getId());
+            assertEquals(full.getComments().size(), summaries.get(i).getCommentsCount());
+            assertEquals(full.getTags().stream().sorted().toList(), summaries.get(i).getTags());
+        }
+    }
+
+    // Как лента грузилась раньше: строки постов целиком, затем теги и комментарии страницы
+    private List<Post> loadFullPosts(JdbcTemplate jdbcTemplate, int limit) {
+        List<Post> posts = jdbcTemplate.query("SELECT * FROM posts ORDER BY id DESC LIMIT ?", (rs, rowNum) -> {
+            Post post = new Post();
+            post.setId(rs.getInt("id"));
+            post.setTitle(rs.getString("title"));
+            post.setText(rs.getString("text"));
+            post.setImagePath(rs.getString("image_path"));
+            post.setLikesCount(rs.getInt("likes_count"));
+            post.setTags(new ArrayList<>());
+            post.setComments(new ArrayList<>());
+            return post;
+        }, limit);
+        Map<Integer, Post> postsById = new HashMap<>();
+        posts.forEach(post -> postsById.put(post.getId(), post));
+        String placeholders = String.join(", ", Collections.nCopies(posts.size(), "?"));
+        Object[] ids = postsById.keySet().toArray();
+        jdbcTemplate.query("SELECT post_id, tag FROM tags WHERE post_id IN (" + placeholders + ")",
+                (RowCallbackHandler) rs -> postsById.get(rs.getInt("post_id")).getTags().add(rs.getString("tag")), ids);
+        jdbcTemplate.query("SELECT id, post_id, text FROM comments WHERE post_id IN (" + placeholders + ") ORDER BY id",
+                (RowCallbackHandler) rs -> postsById.get(rs.getInt("post_id")).getComments()
+                        .add(new Comment(rs.getInt("id"), rs.getString("text"))), ids);
+        return posts;
+    }
+
+    private void savePostWithTags(String title, String... tags) {
+        Post post = new Post();
+        post.setTitle(title);
+        post.setText("Content");
+        post.setTags(Arrays.asList(tags));
+        postRepository.save(post);
+    }
+
+    private void assertPlanUsesIndex(String sql, String index) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+
+        assertTrue(plan.toUpperCase().contains(index), plan);
+    }
+
+    // Считает подготовленные statements, оставаясь внутри транзакции теста
+    private DataSource countingDataSource(AtomicInteger statements) {
+        return new DelegatingDataSource(new TransactionAwareDataSourceProxy(dataSource)) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Connection connection = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[]{Connection.class},
+                        (proxy, method, args) -> {
+                            if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                                statements.incrementAndGet();
+                            }
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            }
+        };
+    }
+
+    @Test
+    public void testImageRefsCountReferences() {
+        imageRefRepository.acquire("/images/ab/cd/abcd.jpg");
+        imageRefRepository.acquire("/images/ab/cd/abcd.jpg");
+
+        assertFalse(imageRefRepository.release("/images/ab/cd/abcd.jpg"));
+        assertTrue(imageRefRepository.release("/images/ab/cd/abcd.jpg"));
+        // Без записи о ссылках (старые картинки) файл никогда не считается лишним
+        assertFalse(imageRefRepository.release("/images/ab/cd/abcd.jpg"));
+        assertFalse(imageRefRepository.release("/images/legacy.jpg"));
+    }
 }
@@ -0,0 +1,86 @@
+package Blog_V2.integration;
+
+import Blog_V2.BlogGradleSpringWebappApplication;
+import Blog_V2.metrics.QueryProfile;
+import Blog_V2.metrics.QueryProfiler;
+import Blog_V2.model.Comment;
+import Blog_V2.model.Post;
+import Blog_V2.repository.JdbcPostRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Бюджеты запросов из application.properties с fail-on-budget=true: лишний SQL на эндпоинте роняет тест
+@SpringBootTest(classes = BlogGradleSpringWebappApplication.class)
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"blog.profiler.enabled=true", "blog.profiler.fail-on-budget=true"})
+class QueryProfilerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private QueryProfiler queryProfiler;
+
+    private JdbcPostRepository repository;
+    private final List<Integer> created = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = new JdbcPostRepository(jdbcTemplate);
+        for (int i = 0; i < 5; i++) {
+            Post post = new Post();
+            post.setTitle("Profiled " + i);
+            post.setText("Content " + i);
+            post.setTags(List.of("profiled"));
+            post.addComment(new Comment("Comment " + i));
+            repository.save(post);
+            created.add(post.getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(repository::deletePost);
+    }
+
+    @Test
+    public void testEndpointsStayWithinQueryBudgets() throws Exception {
+        int id = created.get(0);
+        mockMvc.perform(get("/posts")).andExpect(status().isOk());
+        mockMvc.perform(get("/posts").param("search", "profiled").param("pageSize", "2")).andExpect(status().isOk());
+        mockMvc.perform(get("/posts/" + id)).andExpect(status().isOk());
+        mockMvc.perform(post("/posts/" + id + "/like").param("like", "true")).andExpect(status().is3xxRedirection());
+        mockMvc.perform(post("/posts/" + id + "/comments").param("text", "New")).andExpect(status().is3xxRedirection());
+        mockMvc.perform(get("/posts/images/" + id)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testPerPostLoopIsReportedAsNPlusOne() {
+        QueryProfile profile = queryProfiler.profile(() -> created.forEach(repository::findById));
+
+        List<QueryProfile.Shape> repeated = profile.getRepeated(created.size());
+        // Пост, теги и комментарии - по запросу на каждый пост
+        assertEquals(3, repeated.size());
+        assertTrue(repeated.stream().allMatch(shape -> shape.getCount() == created.size()));
+        assertTrue(repeated.stream().anyMatch(shape -> shape.getSql().equals("SELECT * FROM posts WHERE id = ?")));
+    }
+}
@@ -0,0 +1,132 @@
+package Blog_V2.integration;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Базы, созданные schema.sql до перехода на Flyway: первой его версией и последней.
+// Настройки Flyway те же, что в application.properties
+class SchemaMigrationIntegrationTest {
+
+    private static final String LONG_TEXT = "x".repeat(150);
+
+    private final JdbcDataSource dataSource = new JdbcDataSource();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    SchemaMigrationIntegrationTest() {
+        dataSource.setURL("jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void testInitialMigrationIsTheOriginalSchema() throws IOException {
+        assertArrayEquals(
+                new ClassPathResource("db/legacy/schema-original.sql").getContentAsByteArray(),
+                new ClassPathResource("db/migration/V1__Initial_schema.sql").getContentAsByteArray());
+    }
+
+    @Test
+    public void testMigratesDatabaseCreatedByOriginalSchema() {
+        createLegacyDatabase("db/legacy/schema-original.sql");
+        int postId = insertLegacyPost(true);
+
+        migrate();
+
+        // text_preview, индексы и image_refs в исходной схеме отсутствовали
+        assertEquals("x".repeat(100) + "...",
+                jdbcTemplate.queryForObject("SELECT text_preview FROM posts WHERE id = ?", String.class, postId));
+        assertMigratedSchema(postId);
+    }
+
+    @Test
+    public void testMigratesDatabaseCreatedByLastSchemaSql() {
+        createLegacyDatabase("db/legacy/schema-before-flyway.sql");
+        int postId = insertLegacyPost(true);
+        jdbcTemplate.update("INSERT INTO image_refs (image_path, ref_count) VALUES ('/images/a.jpg', 2)");
+
+        migrate();
+
+        assertEquals("x".repeat(100) + "...",
+                jdbcTemplate.queryForObject("SELECT text_preview FROM posts WHERE id = ?", String.class, postId));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT ref_count FROM image_refs WHERE image_path = '/images/a.jpg'", Integer.class));
+        assertMigratedSchema(postId);
+    }
+
+    @Test
+    public void testMigratesEmptyDatabase() {
+        migrate();
+
+        int postId = insertLegacyPost(false);
+        assertMigratedSchema(postId);
+    }
+
+    private void createLegacyDatabase(String schema) {
+        new ResourceDatabasePopulator(new ClassPathResource(schema)).execute(dataSource);
+    }
+
+    // Пост с длинным текстом без превью, с комментарием и тегом, до миграции - повторённым
+    private int insertLegacyPost(boolean duplicateTag) {
+        jdbcTemplate.update("INSERT INTO posts (title, text, likes_count) VALUES ('Legacy', ?, 3)", LONG_TEXT);
+        int postId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM posts", Integer.class);
+        jdbcTemplate.update("INSERT INTO tags (post_id, tag) VALUES (?, 'java')", postId);
+        if (duplicateTag) {
+            jdbcTemplate.update("INSERT INTO tags (post_id, tag) VALUES (?, 'java')", postId);
+        }
+        jdbcTemplate.update("INSERT INTO comments (post_id, text) VALUES (?, 'Legacy comment')", postId);
+        return postId;
+    }
+
+    private void migrate() {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration", "classpath:Blog_V2/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+    }
+
+    private void assertMigratedSchema(int postId) {
+        assertEquals("3", Flyway.configure().dataSource(dataSource)
+                .locations("classpath:db/migration", "classpath:Blog_V2/migration")
+                .load().info().current().getVersion().getVersion());
+        assertTrue(hasIndex("IDX_TAGS_TAG_POST_ID"));
+        assertTrue(hasIndex("IDX_COMMENTS_POST_ID_ID"));
+        assertTrue(hasTable("IMAGE_REFS"));
+
+        assertEquals(List.of("java"),
+                jdbcTemplate.queryForList("SELECT tag FROM tags WHERE post_id = ?", String.class, postId));
+
+        jdbcTemplate.update("DELETE FROM posts WHERE id = ?", postId);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tags WHERE post_id = ?",
+                Integer.class, postId));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM comments WHERE post_id = ?",
+                Integer.class, postId));
+    }
+
+    private boolean hasTable(String name) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?",
+                Integer.class, name) > 0;
+    }
+
+    private boolean hasIndex(String name) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = ?",
+                Integer.class, name) > 0;
+    }
+}
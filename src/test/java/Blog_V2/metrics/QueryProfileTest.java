@@ -0,0 +1,53 @@
+package Blog_V2.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryProfileTest {
+
+    @Test
+    public void testNormalizeIgnoresValuesAndInListLength() {
+        assertEquals("SELECT * FROM posts WHERE id = ? AND title = ?",
+                QueryProfile.normalize("SELECT *\n  FROM posts WHERE id = 42 AND title = 'it''s'"));
+        assertEquals(QueryProfile.normalize("SELECT tag FROM tags WHERE post_id IN (?, ?, ?)"),
+                QueryProfile.normalize("SELECT tag FROM tags WHERE post_id IN (?)"));
+        assertEquals("<batch>", QueryProfile.normalize(null));
+    }
+
+    @Test
+    public void testRepeatedShapesAreReportedAsNPlusOne() {
+        QueryProfile profile = new QueryProfile();
+        for (int id = 1; id <= 5; id++) {
+            profile.record("SELECT text FROM comments WHERE post_id = " + id, 100);
+        }
+        profile.record("SELECT id FROM posts", 1000);
+
+        assertEquals(6, profile.getStatements());
+        assertEquals(1500, profile.getNanos());
+        List<QueryProfile.Shape> repeated = profile.getRepeated(3);
+        assertEquals(1, repeated.size());
+        assertEquals("SELECT text FROM comments WHERE post_id = ?", repeated.get(0).getSql());
+        assertEquals(5, repeated.get(0).getCount());
+        // Самая дорогая форма - первой
+        assertEquals("SELECT id FROM posts", profile.getShapes().get(0).getSql());
+    }
+
+    @Test
+    public void testBudgetThrowsOnlyWhenFailOnBudget() {
+        QueryProfile profile = new QueryProfile();
+        profile.record("SELECT 1", 1);
+        profile.record("SELECT 2", 1);
+
+        QueryProfiler strict = new QueryProfiler(true, Duration.ofSeconds(1), 3, "GET /posts=1, GET /posts/{id}=3", true);
+        assertThrows(QueryBudgetExceededException.class, () -> strict.enforceBudget("GET", "/posts", profile));
+        assertDoesNotThrow(() -> strict.enforceBudget("GET", "/posts/{id}", profile));
+        assertDoesNotThrow(() -> strict.enforceBudget("POST", "/posts", profile));
+
+        QueryProfiler lenient = new QueryProfiler(true, Duration.ofSeconds(1), 3, "GET /posts=1", false);
+        assertDoesNotThrow(() -> lenient.enforceBudget("GET", "/posts", profile));
+    }
+}
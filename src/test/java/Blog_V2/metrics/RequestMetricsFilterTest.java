@@ -0,0 +1,81 @@
+package Blog_V2.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestMetricsFilterTest {
+
+    private SimpleMeterRegistry registry;
+    private StatementCounter statementCounter;
+    private RequestMetricsFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        statementCounter = new StatementCounter();
+        filter = new RequestMetricsFilter(statementCounter,
+                new QueryProfiler(true, Duration.ofSeconds(1), 3, "", false), registry);
+    }
+
+    @Test
+    public void testRecordsStatementsPerRequestByUriPattern() throws Exception {
+        perform("/posts/{id}", 3, HttpServletResponse.SC_OK, null);
+        perform("/posts/{id}", 1, HttpServletResponse.SC_OK, null);
+        perform("/posts", 2, HttpServletResponse.SC_OK, null);
+
+        var post = registry.get("blog.request.statements").tag("uri", "/posts/{id}").summary();
+        assertEquals(2, post.count());
+        assertEquals(4, post.totalAmount());
+        assertEquals(2, registry.get("blog.request.statements").tag("uri", "/posts").summary().totalAmount());
+        assertEquals(6, statementCounter.total());
+    }
+
+    @Test
+    public void testSkipsStatementsWhenProfilerIsDisabled() throws Exception {
+        filter = new RequestMetricsFilter(statementCounter,
+                new QueryProfiler(false, Duration.ofSeconds(1), 3, "", false), registry);
+
+        perform("/posts", 2, HttpServletResponse.SC_OK, null);
+
+        assertNull(registry.find("blog.request.statements").summary());
+    }
+
+    @Test
+    public void testCountsServedImageBytes() throws Exception {
+        perform("/posts/images/{id}", 1, HttpServletResponse.SC_OK, "1000");
+        perform("/posts/images/{id}", 1, HttpServletResponse.SC_PARTIAL_CONTENT, "200");
+        perform("/posts/images/{id}", 1, HttpServletResponse.SC_NOT_MODIFIED, null);
+        // Не картинка - не считается, даже с телом
+        perform("/posts", 1, HttpServletResponse.SC_OK, "5000");
+
+        assertEquals(1200, registry.get("blog.images.served").counter().count());
+    }
+
+    // Обработчик имитирует DispatcherServlet: выполняет statements SQL-запросов и проставляет шаблон uri
+    private void perform(String pattern, int statements, int status, String contentLength) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", pattern.replace("{id}", "1"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            for (int i = 0; i < statements; i++) {
+                statementCounter.increment();
+            }
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+            HttpServletResponse httpResponse = (HttpServletResponse) res;
+            httpResponse.setStatus(status);
+            if (contentLength != null) {
+                httpResponse.setHeader("Content-Length", contentLength);
+            }
+        };
+        filter.doFilter(request, response, chain);
+    }
+}
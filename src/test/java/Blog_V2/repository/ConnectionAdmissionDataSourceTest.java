@@ -0,0 +1,126 @@
+package Blog_V2.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConnectionAdmissionDataSourceTest {
+
+    private DataSource pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = mock(DataSource.class);
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+    }
+
+    @Test
+    public void testPermitIsReturnedOnceOnClose() throws SQLException {
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 2, 10, Duration.ofSeconds(1));
+
+        Connection connection = dataSource.getConnection();
+        assertEquals(1, dataSource.getAvailablePermits());
+        connection.close();
+        connection.close();
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    public void testPermitIsReturnedWhenPoolFails() throws SQLException {
+        when(pool.getConnection()).thenThrow(new SQLException("Pool is down"));
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 1, 10, Duration.ofSeconds(1));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+        assertEquals(1, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    public void testWaitsForFreedConnection() throws Exception {
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 1, 10, Duration.ofSeconds(10));
+        Connection held = dataSource.getConnection();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Connection> waiter = executor.submit(() -> dataSource.getConnection());
+            while (dataSource.getWaiting() == 0) {
+                Thread.onSpinWait();
+            }
+            assertFalse(waiter.isDone());
+
+            held.close();
+            assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(0, dataSource.getWaiting());
+        }
+        verify(pool, times(2)).getConnection();
+    }
+
+    @Test
+    public void testFreedPermitGoesToQueuedWaiter() throws Exception {
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 1, 10, Duration.ofMillis(500));
+        Connection held = dataSource.getConnection();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            AtomicReference<Thread> waiterThread = new AtomicReference<>();
+            Future<Connection> waiter = executor.submit(() -> {
+                waiterThread.set(Thread.currentThread());
+                return dataSource.getConnection();
+            });
+            // Ждём, пока поток действительно встанет в очередь семафора (виртуальный поток при этом WAITING)
+            while (waiterThread.get() == null || !isParked(waiterThread.get())) {
+                Thread.onSpinWait();
+            }
+
+            // Освобождённое разрешение достаётся тому, кто уже ждёт, а не новому запросу
+            held.close();
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+            assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testTimesOutWhenNoConnectionIsFreed() throws SQLException {
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 1, 10, Duration.ofMillis(50));
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(0, dataSource.getWaiting());
+        verify(pool, times(1)).getConnection();
+    }
+
+    @Test
+    public void testRejectsImmediatelyWhenQueueIsFull() throws Exception {
+        ConnectionAdmissionDataSource dataSource = new ConnectionAdmissionDataSource(pool, 1, 1, Duration.ofSeconds(10));
+        Connection held = dataSource.getConnection();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Connection> waiter = executor.submit(() -> dataSource.getConnection());
+            while (dataSource.getWaiting() == 0) {
+                Thread.onSpinWait();
+            }
+
+            long start = System.nanoTime();
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 1);
+
+            held.close();
+            assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static boolean isParked(Thread thread) {
+        Thread.State state = thread.getState();
+        return state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING;
+    }
+}
@@ -0,0 +1,162 @@
+package Blog_V2.service;
+
+import Blog_V2.dao.repository.PostRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LikeBufferTest {
+
+    @Mock
+    private PostRepository postRepository;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(postRepository.existsById(anyInt())).thenReturn(true);
+    }
+
+    @Test
+    public void testFlushWritesAggregatedDeltas() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 1000);
+
+        likeBuffer.add(1, 1);
+        likeBuffer.add(1, 1);
+        likeBuffer.add(1, -1);
+        likeBuffer.add(2, 1);
+
+        assertEquals(1, likeBuffer.pendingDelta(1));
+        assertEquals(1, likeBuffer.pendingDelta(2));
+        assertEquals(0, likeBuffer.pendingDelta(3));
+
+        likeBuffer.flush();
+
+        verify(postRepository).applyLikeDeltas(Map.of(1, 1, 2, 1));
+        assertEquals(0, likeBuffer.pendingDelta(1));
+        assertEquals(0, likeBuffer.pendingDelta(2));
+
+        likeBuffer.flush();
+
+        // Пост проверяется один раз, пока у него есть счётчик
+        verify(postRepository).existsById(1);
+        verify(postRepository).existsById(2);
+        verifyNoMoreInteractions(postRepository);
+    }
+
+    @Test
+    public void testRejectsUnknownPost() {
+        when(postRepository.existsById(404)).thenReturn(false);
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 1000);
+
+        assertFalse(likeBuffer.add(404, 1));
+        assertEquals(0, likeBuffer.pendingDelta(404));
+
+        likeBuffer.flush();
+        verify(postRepository, never()).applyLikeDeltas(anyMap());
+    }
+
+    @Test
+    public void testFlushedPostsLeaveTheBuffer() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 1000);
+        likeBuffer.add(1, 1);
+        likeBuffer.flush();
+
+        // Счётчик убран после записи: следующий лайк снова проверяет пост
+        likeBuffer.add(1, 1);
+        verify(postRepository, times(2)).existsById(1);
+
+        likeBuffer.flush();
+        verify(postRepository, times(2)).applyLikeDeltas(Map.of(1, 1));
+    }
+
+    @Test
+    public void testFlushOnThreshold() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 3);
+
+        likeBuffer.add(1, 1);
+        likeBuffer.add(1, 1);
+        verify(postRepository, never()).applyLikeDeltas(anyMap());
+
+        likeBuffer.add(1, 1);
+        verify(postRepository).applyLikeDeltas(Map.of(1, 3));
+    }
+
+    @Test
+    public void testFailedFlushKeepsLikes() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 1000);
+        likeBuffer.add(1, 1);
+        doThrow(new RuntimeException("db down")).when(postRepository).applyLikeDeltas(anyMap());
+
+        assertThrows(RuntimeException.class, likeBuffer::flush);
+        assertEquals(1, likeBuffer.pendingDelta(1));
+
+        doNothing().when(postRepository).applyLikeDeltas(anyMap());
+        likeBuffer.flush();
+
+        verify(postRepository, times(2)).applyLikeDeltas(Map.of(1, 1));
+        assertEquals(0, likeBuffer.pendingDelta(1));
+    }
+
+    @Test
+    public void testShutdownFlushesPendingLikes() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 1000);
+        likeBuffer.add(7, 1);
+
+        likeBuffer.flushOnShutdown();
+
+        verify(postRepository).applyLikeDeltas(Map.of(7, 1));
+    }
+
+    @Test
+    public void testDisabledBufferDoesNotFlush() {
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, false, 1000);
+
+        likeBuffer.flush();
+
+        verifyNoInteractions(postRepository);
+    }
+
+    @Test
+    public void testConcurrentLikesDuringFlushesAreNotLost() throws Exception {
+        AtomicLong written = new AtomicLong();
+        doAnswer(invocation -> {
+            Map<Integer, Integer> deltas = invocation.getArgument(0);
+            deltas.values().forEach(written::addAndGet);
+            return null;
+        }).when(postRepository).applyLikeDeltas(anyMap());
+        LikeBuffer likeBuffer = new LikeBuffer(postRepository, true, 500);
+
+        int threads = 8;
+        int likesPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < likesPerThread; i++) {
+                    likeBuffer.add(i % 5, 1);
+                }
+            });
+        }
+        executor.submit(() -> {
+            for (int i = 0; i < 100; i++) {
+                likeBuffer.flush();
+            }
+        });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        likeBuffer.flush();
+
+        assertEquals((long) threads * likesPerThread, written.get());
+    }
+}
@@ -1,20 +1,28 @@
 package Blog_V2.service;
 
 import Blog_V2.dao.repository.PostRepository;
+import Blog_V2.dao.storage.ImageStorage;
 import Blog_V2.model.Comment;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.Page;
+import Blog_V2.model.Paging;
 import Blog_V2.model.Post;
+import Blog_V2.model.PostSummary;
+import Blog_V2.model.StoredImage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -29,25 +37,37 @@ public class PostServiceTest {
     @Mock
     private PostRepository postRepository;
 
+    @Mock
+    private LikeBuffer likeBuffer;
+
+    @Mock
+    private ImageStorage imageStorage;
+
+    @Mock
+    private ContentVersions contentVersions;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private PostService postService;
 
 
     @Test
     public void testGetPosts() {
-        Post post1 = new Post();
+        PostSummary post1 = new PostSummary();
         post1.setId(1);
         post1.setTitle("Post 1");
         
-        Post post2 = new Post();
+        PostSummary post2 = new PostSummary();
         post2.setId(2);
         post2.setTitle("Post 2");
         
-        List<Post> posts = Arrays.asList(post1, post2);
+        List<PostSummary> posts = Arrays.asList(post1, post2);
         
         when(postRepository.getPosts("test", 10, 1)).thenReturn(posts);
         
-        List<Post> result = postService.getPosts("test", 10, 1);
+        List<PostSummary> result = postService.getPosts("test", 10, 1);
         
         // Проверки
         assertNotNull(result);
@@ -58,6 +78,26 @@ public class PostServiceTest {
         verify(postRepository).getPosts("test", 10, 1);
     }
 
+    @Test
+    public void testControllerEntryPointsAreTimed() {
+        when(postRepository.getPosts("", 10, 1)).thenReturn(new ArrayList<>());
+        when(postRepository.findById(999)).thenReturn(Optional.empty());
+        when(postRepository.hasMorePosts("", 10, 1)).thenReturn(false);
+
+        postService.getPosts("", 10, 1);
+        postService.getPosts("", 10, 1);
+        // Ошибка тоже попадает в таймер
+        assertThrows(RuntimeException.class, () -> postService.getPostById(999));
+        postService.createPaging("", 10, 1);
+
+        assertEquals(2, meterRegistry.get("blog.service").tag("method", "getPosts").timer().count());
+        assertEquals(1, meterRegistry.get("blog.service").tag("method", "getPostById").timer().count());
+        assertEquals(0, meterRegistry.get("blog.service").tag("method", "deletePost").timer().count());
+        // Ни вспомогательный createPaging, ни вложенный в него hasMorePosts не замеряются
+        assertNull(meterRegistry.find("blog.service").tag("method", "createPaging").timer());
+        assertNull(meterRegistry.find("blog.service").tag("method", "hasMorePosts").timer());
+    }
+
     @Test
     public void testHasMorePosts() {
         when(postRepository.hasMorePosts("test", 5, 2)).thenReturn(true);
@@ -69,6 +109,84 @@ public class PostServiceTest {
         verify(postRepository).hasMorePosts("test", 5, 2);
     }
 
+    @Test
+    public void testGetPostsBeforeTrimsLookaheadPost() {
+        List<PostSummary> posts = new ArrayList<>();
+        for (int id = 9; id >= 6; id--) {
+            PostSummary post = new PostSummary();
+            post.setId(id);
+            posts.add(post);
+        }
+        when(postRepository.getPostsBefore("", 10, 4)).thenReturn(posts);
+
+        Page<PostSummary> page = postService.getPostsBefore("", 10, 3);
+
+        assertEquals(List.of(9, 8, 7), page.getItems().stream().map(PostSummary::getId).toList());
+        assertTrue(page.getPaging().hasNext());
+        assertTrue(page.getPaging().hasPrevious());
+        assertEquals(10, page.getPaging().before());
+        assertEquals(7, page.getPaging().nextBefore());
+        // Список из репозитория не меняется: он может лежать в кеше
+        assertEquals(4, posts.size());
+    }
+
+    @Test
+    public void testGetPostsBeforeLastPage() {
+        PostSummary post = new PostSummary();
+        post.setId(2);
+        when(postRepository.getPostsBefore("", 5, 4)).thenReturn(List.of(post));
+
+        Page<PostSummary> page = postService.getPostsBefore("", 5, 3);
+
+        assertEquals(1, page.getItems().size());
+        assertFalse(page.getPaging().hasNext());
+        assertEquals(2, page.getPaging().nextBefore());
+    }
+
+    @Test
+    public void testGetCommentsTrimsExtraComment() {
+        List<Comment> comments = new ArrayList<>();
+        for (int id = 11; id <= 14; id++) {
+            comments.add(new Comment(id, "Comment " + id));
+        }
+        when(postRepository.getComments(1, 10, 4)).thenReturn(comments);
+
+        Page<Comment> page = postService.getComments(1, 10, 3);
+
+        assertEquals(3, page.getItems().size());
+        assertTrue(page.getPaging().hasNext());
+        assertTrue(page.getPaging().hasPrevious());
+        assertEquals(10, page.getPaging().after());
+        assertEquals(13, page.getPaging().nextAfter());
+        assertEquals(4, comments.size());
+    }
+
+    @Test
+    public void testCommentPagingOfLoadedPost() {
+        Post post = new Post();
+        post.setComments(new ArrayList<>(List.of(new Comment(1, "First"), new Comment(2, "Second"))));
+        post.setCommentsCount(5);
+
+        Paging paging = postService.createCommentPaging(post);
+        assertTrue(paging.hasNext());
+        assertFalse(paging.hasPrevious());
+        assertEquals(2, paging.nextAfter());
+
+        post.setCommentsCount(2);
+        assertFalse(postService.createCommentPaging(post).hasNext());
+    }
+
+    @Test
+    public void testGetCommentsAsksForOneExtraComment() {
+        when(postRepository.getComments(1, 10, 4)).thenReturn(List.of(new Comment(11, "Comment")));
+
+        Page<Comment> page = postService.getComments(1, 10, 3);
+
+        assertEquals(1, page.getItems().size());
+        assertFalse(page.getPaging().hasNext());
+        verify(postRepository).getComments(1, 10, 4);
+    }
+
     @Test
     public void testGetPostById() {
         Post post = new Post();
@@ -99,74 +217,61 @@ public class PostServiceTest {
         verify(postRepository).findById(999);
     }
 
-
     @Test
-    public void testAddComment() {
+    public void testGetPostWithoutComments() {
         Post post = new Post();
         post.setId(1);
-        post.setTitle("Test Post");
-        
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
+        when(postRepository.findByIdWithoutComments(1)).thenReturn(Optional.of(post));
+        when(postRepository.findByIdWithoutComments(999)).thenReturn(Optional.empty());
+
+        assertEquals(1, postService.getPostWithoutComments(1).getId());
+        assertEquals("Post not found",
+                assertThrows(RuntimeException.class, () -> postService.getPostWithoutComments(999)).getMessage());
+        verify(postRepository, never()).findById(anyInt());
+    }
+
+
+    @Test
+    public void testAddComment() {
+        when(postRepository.addComment(1, "Test comment")).thenReturn(true);
+
         postService.addComment(1, "Test comment");
-        
-        assertEquals(1, post.getComments().size());
-        assertEquals("Test comment", post.getComments().get(0).getText());
-        
-        verify(postRepository).findById(1);
-        verify(postRepository).save(post);
+
+        verify(postRepository).addComment(1, "Test comment");
+        verify(postRepository, never()).findById(anyInt());
+        verify(postRepository, never()).save(any(Post.class));
     }
 
     @Test
-    public void testDeleteComment() {
-        Post post = new Post();
-        post.setId(1);
-        post.setTitle("Test Post");
-        
-        Comment comment1 = new Comment();
-        comment1.setId(1);
-        comment1.setText("Comment 1");
-        
-        Comment comment2 = new Comment();
-        comment2.setId(2);
-        comment2.setText("Comment 2");
+    public void testAddCommentPostNotFound() {
+        when(postRepository.addComment(999, "Test comment")).thenReturn(false);
 
-        post.setComments(new ArrayList<>(Arrays.asList(comment1, comment2)));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            postService.addComment(999, "Test comment");
+        });
+
+        assertEquals("Post not found", exception.getMessage());
+    }
+
+    @Test
+    public void testDeleteComment() {
+        when(postRepository.deleteComment(1, 2)).thenReturn(true);
 
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
         postService.deleteComment(1, 2);
-        
-        assertEquals(1, post.getComments().size());
-        assertEquals(1, post.getComments().get(0).getId());
-        assertEquals("Comment 1", post.getComments().get(0).getText());
-        
-        verify(postRepository).findById(1);
+
         verify(postRepository).deleteComment(1, 2);
-        verify(postRepository).save(post);
+        verify(postRepository, never()).findById(anyInt());
+        verify(postRepository, never()).save(any(Post.class));
     }
 
     @Test
     public void testEditComment() {
-        Post post = new Post();
-        post.setId(1);
-        post.setTitle("Test Post");
-        
-        Comment comment = new Comment();
-        comment.setId(1);
-        comment.setText("Original comment");
-        
-        post.setComments(Arrays.asList(comment));
-        
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
+        when(postRepository.editComment(1, 1, "Updated comment")).thenReturn(true);
+
         postService.editComment(1, 1, "Updated comment");
-        
-        assertEquals(1, post.getComments().size());
-        assertEquals("Updated comment", post.getComments().get(0).getText());
-        
-        verify(postRepository).findById(1);
+
         verify(postRepository).editComment(1, 1, "Updated comment");
+        verify(postRepository, never()).findById(anyInt());
     }
 
 
@@ -177,6 +282,77 @@ public class PostServiceTest {
         verify(postRepository).deletePost(1);
     }
 
+    @Test
+    public void testMutationsBumpContentVersion() {
+        when(postRepository.addComment(1, "Text")).thenReturn(true);
+        when(postRepository.updateLikes(1, 1)).thenReturn(true);
+        when(postRepository.editComment(1, 2, "Edited")).thenReturn(true);
+        when(postRepository.deleteComment(1, 2)).thenReturn(true);
+
+        postService.addComment(1, "Text");
+        postService.editComment(1, 2, "Edited");
+        postService.deleteComment(1, 2);
+        postService.updateLikes(1, true);
+        postService.deletePost(1);
+
+        verify(contentVersions, times(4)).postChanged(1);
+        verify(contentVersions).postDeleted(1);
+    }
+
+    @Test
+    public void testFailedMutationKeepsContentVersion() {
+        when(postRepository.updateLikes(999, 1)).thenReturn(false);
+
+        assertThrows(RuntimeException.class, () -> postService.updateLikes(999, true));
+        assertThrows(CommentNotFoundException.class, () -> postService.editComment(1, 999, "Edited"));
+        // Удаление уже удалённого комментария ничего не делает
+        postService.deleteComment(1, 999);
+
+        verify(contentVersions, never()).postChanged(anyInt());
+    }
+
+    @Test
+    public void testDeletePostReleasesImage() {
+        when(postRepository.findImagePath(1)).thenReturn(Optional.of("/images/ab/cd/abcd.jpg"));
+
+        postService.deletePost(1);
+
+        verify(postRepository).deletePost(1);
+        verify(imageStorage).release("/images/ab/cd/abcd.jpg");
+    }
+
+    @Test
+    public void testUpdatePostReleasesReplacedImage() throws IOException {
+        Post post = new Post();
+        post.setId(1);
+        post.setImagePath("/images/old.jpg");
+        MockMultipartFile image = new MockMultipartFile(
+                "image", "new.jpg", "image/jpeg", "new image".getBytes());
+
+        when(postRepository.findById(1)).thenReturn(Optional.of(post));
+        when(imageStorage.store(any(InputStream.class))).thenReturn("/images/new.jpg");
+
+        postService.updatePost(1, "Title", "Text", "", image);
+
+        assertEquals("/images/new.jpg", post.getImagePath());
+        verify(postRepository).save(post);
+        verify(imageStorage).release("/images/old.jpg");
+    }
+
+    @Test
+    public void testUpdatePostWithoutImageKeepsImage() throws IOException {
+        Post post = new Post();
+        post.setId(1);
+        post.setImagePath("/images/old.jpg");
+
+        when(postRepository.findById(1)).thenReturn(Optional.of(post));
+
+        postService.updatePost(1, "Title", "Text", "", null);
+
+        assertEquals("/images/old.jpg", post.getImagePath());
+        verify(imageStorage, never()).release(anyString());
+    }
+
     @Test
     public void testSavePost() {
         Post post = new Post();
@@ -190,53 +366,83 @@ public class PostServiceTest {
 
     @Test
     public void testUpdateLikesIncrement() {
-        Post post = new Post();
-        post.setId(1);
-        post.setTitle("Test Post");
-        post.setLikesCount(5);
-        
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
+        when(postRepository.updateLikes(1, 1)).thenReturn(true);
+
         postService.updateLikes(1, true);
-        
-        assertEquals(6, post.getLikesCount());
-        
-        verify(postRepository).findById(1);
-        verify(postRepository).save(post);
+
+        verify(postRepository).updateLikes(1, 1);
+        verify(postRepository, never()).findById(anyInt());
+        verify(postRepository, never()).save(any(Post.class));
     }
 
     @Test
     public void testUpdateLikesDecrement() {
+        when(postRepository.updateLikes(1, -1)).thenReturn(true);
+
+        postService.updateLikes(1, false);
+
+        verify(postRepository).updateLikes(1, -1);
+        verify(postRepository, never()).save(any(Post.class));
+    }
+
+    @Test
+    public void testUpdateLikesPostNotFound() {
+        when(postRepository.updateLikes(999, 1)).thenReturn(false);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            postService.updateLikes(999, true);
+        });
+
+        assertEquals("Post not found", exception.getMessage());
+    }
+
+    @Test
+    public void testUpdateLikesBuffered() {
+        when(likeBuffer.isEnabled()).thenReturn(true);
+        when(likeBuffer.add(eq(1), anyInt())).thenReturn(true);
+
+        postService.updateLikes(1, true);
+        postService.updateLikes(1, false);
+
+        verify(likeBuffer).add(1, 1);
+        verify(likeBuffer).add(1, -1);
+        verify(postRepository, never()).updateLikes(anyInt(), anyInt());
+    }
+
+    @Test
+    public void testUpdateLikesBufferedRejectsUnknownPost() {
+        when(likeBuffer.isEnabled()).thenReturn(true);
+        when(likeBuffer.add(999, 1)).thenReturn(false);
+
+        assertThrows(RuntimeException.class, () -> postService.updateLikes(999, true));
+
+        verify(contentVersions, never()).postChanged(anyInt());
+    }
+
+    @Test
+    public void testGetPostByIdMergesPendingLikes() {
         Post post = new Post();
         post.setId(1);
-        post.setTitle("Test Post");
         post.setLikesCount(5);
-        
+
+        when(likeBuffer.isEnabled()).thenReturn(true);
+        when(likeBuffer.pendingDelta(1)).thenReturn(3);
         when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
-        postService.updateLikes(1, false);
-        
-        assertEquals(4, post.getLikesCount());
-        
-        verify(postRepository).findById(1);
-        verify(postRepository).save(post);
+
+        assertEquals(8, postService.getPostById(1).getLikesCount());
     }
 
     @Test
-    public void testUpdateLikesPreventNegative() {
-        Post post = new Post();
+    public void testGetPostsMergesPendingLikesWithoutGoingNegative() {
+        PostSummary post = new PostSummary();
         post.setId(1);
-        post.setTitle("Test Post");
-        post.setLikesCount(0);
-        
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
-        postService.updateLikes(1, false);
-        
-        assertEquals(0, post.getLikesCount()); // Не должно стать отрицательным
-        
-        verify(postRepository).findById(1);
-        verify(postRepository).save(post);
+        post.setLikesCount(1);
+
+        when(likeBuffer.isEnabled()).thenReturn(true);
+        when(likeBuffer.pendingDelta(1)).thenReturn(-4);
+        when(postRepository.getPosts("", 10, 1)).thenReturn(new ArrayList<>(List.of(post)));
+
+        assertEquals(0, postService.getPosts("", 10, 1).get(0).getLikesCount());
     }
 
     @Test
@@ -277,12 +483,23 @@ public class PostServiceTest {
                 "test.jpg", 
                 "image/jpeg", 
                 "test image content".getBytes());
+        when(imageStorage.store(any(InputStream.class))).thenReturn("/images/ab/cd/abcd.jpg");
         
         String imagePath = postService.saveImage(image);
         
-        assertNotNull(imagePath);
-        assertTrue(imagePath.startsWith("/images/"));
-        assertTrue(imagePath.contains("_test.jpg"));
+        assertEquals("/images/ab/cd/abcd.jpg", imagePath);
+    }
+
+    @Test
+    public void testCreatePostReleasesImageWhenSaveFails() throws IOException {
+        MockMultipartFile image = new MockMultipartFile(
+                "image", "test.jpg", "image/jpeg", "test image content".getBytes());
+        when(imageStorage.store(any(InputStream.class))).thenReturn("/images/test.jpg");
+        doThrow(new RuntimeException("db down")).when(postRepository).save(any(Post.class));
+
+        assertThrows(RuntimeException.class, () -> postService.createPost("Title", "Text", "", image));
+
+        verify(imageStorage).release("/images/test.jpg");
     }
 
     @Test
@@ -299,44 +516,33 @@ public class PostServiceTest {
     }
 
     @Test
-    public void testGetImageByPostId() throws IOException {
-        Post post = new Post();
-        post.setId(1);
-        post.setImagePath("/images/test.jpg");
-        
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
-        Path uploadDir = Paths.get("uploads/images");
-        if (!Files.exists(uploadDir)) {
-            Files.createDirectories(uploadDir);
-        }
-        Path testImage = uploadDir.resolve("test.jpg");
-        Files.write(testImage, "test image content".getBytes());
-        
-        try {
-            byte[] imageBytes = postService.getImageByPostId(1);
-            
-            assertNotNull(imageBytes);
-            assertEquals("test image content", new String(imageBytes));
-        } finally {
-            Files.deleteIfExists(testImage);
-        }
-        
-        verify(postRepository).findById(1);
+    public void testGetImageResource() throws IOException {
+        StoredImage stored = new StoredImage(new ByteArrayResource("test image content".getBytes()), "test.jpg", true);
+        when(postRepository.findImagePath(1)).thenReturn(Optional.of("/images/test.jpg"));
+        when(imageStorage.load("/images/test.jpg", ImageSize.THUMBNAIL)).thenReturn(stored);
+
+        StoredImage image = postService.getImageResource(1, ImageSize.THUMBNAIL);
+
+        assertSame(stored, image);
+        verify(postRepository).findImagePath(1);
+        verify(postRepository, never()).findById(anyInt());
     }
 
     @Test
-    public void testGetImageByPostIdNoImage() throws IOException {
-        Post post = new Post();
-        post.setId(1);
+    public void testGetImageResourceNoImage() {
+        when(postRepository.findImagePath(1)).thenReturn(Optional.empty());
 
-        when(postRepository.findById(1)).thenReturn(Optional.of(post));
-        
-        byte[] imageBytes = postService.getImageByPostId(1);
-        
-        assertNull(imageBytes);
-        
-        verify(postRepository).findById(1);
+        assertNull(postService.getImageResource(1, null));
+
+        verify(postRepository).findImagePath(1);
+        verify(imageStorage, never()).load(anyString(), any());
+    }
+
+    @Test
+    public void testGetImageResourceMissingFile() {
+        when(postRepository.findImagePath(1)).thenReturn(Optional.of("/images/missing.jpg"));
+
+        assertNull(postService.getImageResource(1, null));
     }
 
 
@@ -0,0 +1,122 @@
+package Blog_V2.storage;
+
+import Blog_V2.model.ImageSize;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageResizerTest {
+
+    @TempDir
+    Path dir;
+
+    private ImageResizer imageResizer;
+
+    @BeforeEach
+    void setUp() {
+        imageResizer = new ImageResizer(1, 10, 10_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageResizer.shutdown();
+    }
+
+    @Test
+    public void testCreatesThumbnailForLargeImage() throws Exception {
+        Path original = writeImage("1_large.png", 800, 600);
+
+        imageResizer.createVariants(original).get(10, TimeUnit.SECONDS);
+
+        Path thumbnail = ImageResizer.variantPath(original, ImageSize.THUMBNAIL);
+        assertEquals(dir.resolve("1_large.thumb.png"), thumbnail);
+        BufferedImage resized = ImageIO.read(thumbnail.toFile());
+        assertEquals(300, resized.getHeight());
+        assertEquals(400, resized.getWidth());
+
+        // 800x600 и так меньше полноразмерной копии
+        assertFalse(Files.exists(ImageResizer.variantPath(original, ImageSize.FULL)));
+    }
+
+    @Test
+    public void testCreatesFullVariantForHugeImage() throws Exception {
+        Path original = writeImage("2_huge.jpg", 3200, 1600);
+
+        imageResizer.createVariants(original).get(10, TimeUnit.SECONDS);
+
+        BufferedImage full = ImageIO.read(ImageResizer.variantPath(original, ImageSize.FULL).toFile());
+        assertEquals(1600, full.getWidth());
+        assertEquals(800, full.getHeight());
+        BufferedImage thumbnail = ImageIO.read(ImageResizer.variantPath(original, ImageSize.THUMBNAIL).toFile());
+        assertEquals(600, thumbnail.getWidth());
+        assertEquals(300, thumbnail.getHeight());
+    }
+
+    @Test
+    public void testSubsampledDecodeKeepsVariantSizes() throws Exception {
+        // Копии в 0.3 и 0.4 от оригинала: читается каждый второй пиксель, 2000x500
+        Path original = writeImage("4_wide.png", 4000, 1000);
+
+        imageResizer.createVariants(original).get(10, TimeUnit.SECONDS);
+
+        BufferedImage full = ImageIO.read(ImageResizer.variantPath(original, ImageSize.FULL).toFile());
+        assertEquals(1600, full.getWidth());
+        assertEquals(400, full.getHeight());
+        BufferedImage thumbnail = ImageIO.read(ImageResizer.variantPath(original, ImageSize.THUMBNAIL).toFile());
+        assertEquals(1200, thumbnail.getWidth());
+        assertEquals(300, thumbnail.getHeight());
+    }
+
+    @Test
+    public void testSkipsImagesOverPixelLimit() throws Exception {
+        imageResizer.shutdown();
+        imageResizer = new ImageResizer(1, 10, 1_000_000);
+        Path original = writeImage("5_over_limit.png", 3200, 1600);
+
+        imageResizer.createVariants(original).get(10, TimeUnit.SECONDS);
+
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testReportsWhichVariantsWillExist() throws Exception {
+        Path large = writeImage("6_large.png", 800, 600);
+        Path fake = Files.write(dir.resolve("7_fake.png"), "not an image".getBytes());
+
+        assertTrue(imageResizer.createsVariant(large, ImageSize.THUMBNAIL));
+        assertFalse(imageResizer.createsVariant(large, ImageSize.FULL));
+        assertFalse(imageResizer.createsVariant(fake, ImageSize.THUMBNAIL));
+        assertFalse(new ImageResizer(1, 1, 100_000).createsVariant(large, ImageSize.THUMBNAIL));
+    }
+
+    @Test
+    public void testSkipsFilesThatAreNotImages() throws Exception {
+        Path original = Files.write(dir.resolve("3_fake.png"), "not an image".getBytes());
+
+        imageResizer.createVariants(original).get(10, TimeUnit.SECONDS);
+
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private Path writeImage(String name, int width, int height) throws IOException {
+        Path file = dir.resolve(name);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        String format = name.substring(name.lastIndexOf('.') + 1);
+        ImageIO.write(image, format, file.toFile());
+        return file;
+    }
+}
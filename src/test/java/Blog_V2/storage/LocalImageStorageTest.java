@@ -0,0 +1,234 @@
+package Blog_V2.storage;
+
+import Blog_V2.dao.repository.ImageRefRepository;
+import Blog_V2.model.ImageSize;
+import Blog_V2.model.StoredImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class LocalImageStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private Path root;
+    private ImageRefRepository imageRefRepository;
+    private ImageResizer imageResizer;
+    private LocalImageStorage imageStorage;
+
+    @BeforeEach
+    void setUp() {
+        imageRefRepository = mock(ImageRefRepository.class);
+        imageResizer = mock(ImageResizer.class);
+        root = dir.resolve("images");
+        imageStorage = new LocalImageStorage(root.toString(), DataSize.ofMegabytes(10), imageRefRepository, imageResizer);
+    }
+
+    @Test
+    public void testStoresUnderContentHash() throws Exception {
+        byte[] content = png("cat");
+        String imagePath = imageStorage.store(new ByteArrayInputStream(content));
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        String relative = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".png";
+        assertEquals("/images/" + relative, imagePath);
+        Path file = root.resolve(relative);
+        assertArrayEquals(content, Files.readAllBytes(file));
+        verify(imageResizer).createVariants(file);
+        verify(imageRefRepository).acquire(imagePath);
+    }
+
+    @Test
+    public void testExtensionComesFromContent() throws IOException {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3};
+
+        assertTrue(imageStorage.store(new ByteArrayInputStream(jpeg)).endsWith(".jpg"));
+    }
+
+    @Test
+    public void testRejectsNonImage() throws IOException {
+        assertThrows(InvalidImageException.class,
+                () -> imageStorage.store(new ByteArrayInputStream("<script>alert(1)</script>".getBytes())));
+        assertThrows(InvalidImageException.class,
+                () -> imageStorage.store(new ByteArrayInputStream(new byte[0])));
+
+        assertNoFiles();
+        verify(imageRefRepository, never()).acquire(any());
+    }
+
+    @Test
+    public void testRejectsTooLargeUploadWithoutLeavingFiles() throws IOException {
+        imageStorage = new LocalImageStorage(root.toString(), DataSize.ofKilobytes(100), imageRefRepository, imageResizer);
+        byte[] content = png("x".repeat(100 * 1024));
+
+        assertThrows(MaxUploadSizeExceededException.class,
+                () -> imageStorage.store(new ByteArrayInputStream(content)));
+
+        assertNoFiles();
+        verify(imageRefRepository, never()).acquire(any());
+    }
+
+    @Test
+    public void testParallelUploads() throws Exception {
+        int uploads = 8;
+        byte[] chunk = new byte[256 * 1024];
+        new Random(42).nextBytes(chunk);
+
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < uploads; i++) {
+                // Загрузки попарно одинаковые: одинаковое содержимое одновременно пишется в один и тот же файл
+                InputStream content = new SequenceInputStream(
+                        new ByteArrayInputStream(png("upload " + i / 2)), new ByteArrayInputStream(chunk));
+                futures.add(executor.submit(() -> {
+                    startGate.await();
+                    return imageStorage.store(content);
+                }));
+            }
+            startGate.countDown();
+            List<String> paths = new ArrayList<>();
+            for (Future<String> future : futures) {
+                paths.add(future.get(30, TimeUnit.SECONDS));
+            }
+
+            assertEquals(uploads / 2, new HashSet<>(paths).size());
+            for (String path : new HashSet<>(paths)) {
+                verify(imageRefRepository, times(2)).acquire(path);
+            }
+            verify(imageResizer, times(uploads / 2)).createVariants(any());
+            // Ни временных файлов, ни недописанных копий
+            try (Stream<Path> files = Files.walk(root)) {
+                assertEquals(uploads / 2, files.filter(Files::isRegularFile).count());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSameContentIsStoredOnce() throws IOException {
+        String first = store("same bytes");
+        String second = store("same bytes");
+
+        assertEquals(first, second);
+        verify(imageResizer, times(1)).createVariants(any());
+        verify(imageRefRepository, times(2)).acquire(first);
+        // Временные файлы загрузки не остаются
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void testLoadFallsBackToOriginal() throws IOException {
+        String imagePath = store("picture");
+        when(imageResizer.createsVariant(any(), eq(ImageSize.THUMBNAIL))).thenReturn(true);
+        StoredImage pending = imageStorage.load(imagePath, ImageSize.THUMBNAIL);
+        Resource original = pending.getResource();
+        assertTrue(original.getFilename().endsWith(".png"));
+        assertFalse(original.getFilename().contains(".thumb."));
+        assertEquals(original.getFilename(), pending.getVersion());
+        // Копия ещё будет, оригинал под ссылкой на неё временный
+        assertFalse(pending.isImmutable());
+
+        Path thumbnail = ImageResizer.variantPath(original.getFile().toPath(), ImageSize.THUMBNAIL);
+        Files.writeString(thumbnail, "thumb");
+
+        StoredImage variant = imageStorage.load(imagePath, ImageSize.THUMBNAIL);
+        assertEquals(thumbnail.getFileName().toString(), variant.getResource().getFilename());
+        assertTrue(variant.isImmutable());
+        assertEquals(original.getFilename(), imageStorage.load(imagePath, null).getResource().getFilename());
+        assertTrue(imageStorage.load(imagePath, null).isImmutable());
+    }
+
+    @Test
+    public void testOriginalIsFinalWhenNoVariantIsNeeded() throws IOException {
+        String imagePath = store("small");
+        when(imageResizer.createsVariant(any(), eq(ImageSize.FULL))).thenReturn(false);
+
+        StoredImage image = imageStorage.load(imagePath, ImageSize.FULL);
+
+        assertFalse(image.getResource().getFilename().contains(".full."));
+        assertTrue(image.isImmutable());
+    }
+
+    @Test
+    public void testReleaseDeletesOnlyOrphanedImage() throws IOException {
+        String imagePath = store("shared");
+        Path original = imageStorage.load(imagePath, null).getResource().getFile().toPath();
+        Path thumbnail = Files.writeString(ImageResizer.variantPath(original, ImageSize.THUMBNAIL), "thumb");
+
+        when(imageRefRepository.release(imagePath)).thenReturn(false);
+        imageStorage.release(imagePath);
+        assertTrue(Files.exists(original));
+
+        when(imageRefRepository.release(imagePath)).thenReturn(true);
+        imageStorage.release(imagePath);
+        assertFalse(Files.exists(original));
+        assertFalse(Files.exists(thumbnail));
+    }
+
+    @Test
+    public void testIgnoresPathsOutsideImageDir() throws IOException {
+        Path secret = Files.writeString(dir.resolve("secret.txt"), "secret");
+
+        assertNull(imageStorage.load("/images/../secret.txt", null));
+        assertNull(imageStorage.load("/static/secret.txt", null));
+        imageStorage.release("/images/../secret.txt");
+
+        verify(imageRefRepository, never()).release(any());
+        assertTrue(Files.exists(secret));
+    }
+
+    private String store(String content) throws IOException {
+        return imageStorage.store(new ByteArrayInputStream(png(content)));
+    }
+
+    // Сигнатура PNG и произвольное содержимое: формат определяется только по первым байтам
+    private static byte[] png(String content) {
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        byte[] body = content.getBytes();
+        byte[] result = Arrays.copyOf(signature, signature.length + body.length);
+        System.arraycopy(body, 0, result, signature.length, body.length);
+        return result;
+    }
+
+    private void assertNoFiles() throws IOException {
+        if (Files.exists(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                assertEquals(0, files.filter(Files::isRegularFile).count());
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+CREATE TABLE IF NOT EXISTS posts (
+                                     id INT AUTO_INCREMENT PRIMARY KEY,
+                                     title VARCHAR(255) NOT NULL,
+                                     text TEXT,
+                                     image_path VARCHAR(255),
+                                     likes_count INT DEFAULT 0
+);
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS text_preview VARCHAR(255);
+UPDATE posts SET text_preview = CASE WHEN CHAR_LENGTH(text) > 100 THEN SUBSTRING(text, 1, 100) || '...' ELSE text END
+WHERE text_preview IS NULL AND text IS NOT NULL;
+
+CREATE TABLE IF NOT EXISTS tags (
+                                    post_id INT,
+                                    tag VARCHAR(255),
+                                    FOREIGN KEY (post_id) REFERENCES posts(id)
+);
+CREATE INDEX IF NOT EXISTS idx_tags_tag_post_id ON tags(tag, post_id);
+CREATE TABLE IF NOT EXISTS comments (
+                                        id INT AUTO_INCREMENT PRIMARY KEY,
+                                        post_id INT,
+                                        text TEXT NOT NULL,
+                                        FOREIGN KEY (post_id) REFERENCES posts(id)
+);
+-- Страницы комментариев поста: WHERE post_id = ? AND id > ? ORDER BY id
+CREATE INDEX IF NOT EXISTS idx_comments_post_id_id ON comments(post_id, id);
+CREATE TABLE IF NOT EXISTS image_refs (
+                                          image_path VARCHAR(255) PRIMARY KEY,
+                                          ref_count INT NOT NULL
+);